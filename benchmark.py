@@ -0,0 +1,153 @@
+"""
+End-to-end throughput check of the preprocessor. Generates a synthetic corpus (see synthetic_corpus.py), runs a
+whole --dataset extraction in a fresh JVM for each worker count and reports methods/sec, peak RSS and the tail of
+the per-project times, compared against the baselines recorded on this machine in benchmark_baseline.json.
+
+    python benchmark.py --workers 1 2 4
+    python benchmark.py --workers 1 2 4 --update_baseline
+    python benchmark.py --workers 2 -- --resolve_types
+
+Exits with status 1 if a run is worse than its baseline by more than --tolerance. Baselines are machine
+dependent, so the baseline file is not checked in: record one with --update_baseline before changing the code,
+on the machine that will run the comparison. Baselines are keyed by the number of CPUs, the corpus options and
+the extra preprocessor options, and --update_baseline replaces the ones of the runs just made. A run without a
+baseline is reported but never fails.
+"""
+import argparse
+import json
+import os
+import re
+import shutil
+import subprocess
+import sys
+import tempfile
+import time
+
+import synthetic_corpus
+
+ROOT = os.path.dirname(os.path.realpath(__file__))
+DEFAULT_JAR = os.path.join(ROOT, 'preprocessor', 'target', 'preprocessor-0.0.1-SNAPSHOT.jar')
+DEFAULT_BASELINE = os.path.join(ROOT, 'benchmark_baseline.json')
+PROJECT_TIME = re.compile(r'\): estimated .*, actual (\d+) ms$')
+
+
+def percentile(values, p):
+    if not values:
+        return 0
+    values = sorted(values)
+    return values[min(len(values) - 1, int(p / 100 * len(values)))]
+
+
+def run(jar, corpus, workers, extra, work_dir):
+    output_dir = os.path.join(work_dir, f'output-{workers}')
+    log_dir = os.path.join(work_dir, f'logs-{workers}')
+    shutil.rmtree(output_dir, ignore_errors=True)
+    shutil.rmtree(log_dir, ignore_errors=True)
+    start = time.time()
+    proc = subprocess.Popen(['java', '-cp', jar, 'preprocessor.App', '--dataset', corpus, '--output_dir', output_dir,
+                             '--log_dir', log_dir, '--num_workers', str(workers)] + extra,
+                            stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL)
+    # wait4 は子プロセスだけの rusage を返すので、ru_maxrss がその JVM のピーク RSS (VmHWM) になる
+    _, status, usage = os.wait4(proc.pid, 0)
+    seconds = time.time() - start
+    if status != 0:
+        sys.exit(f'extraction with {workers} workers failed with status {status}, see {log_dir}')
+
+    with open(os.path.join(output_dir, 'manifest-0-of-1.json')) as f:
+        methods = sum(p['graphs'] for p in json.load(f)['projects'])
+    project_ms = []
+    with open(os.path.join(log_dir, 'preprocess.log'), encoding='utf-8') as f:
+        for line in f:
+            m = PROJECT_TIME.search(line.rstrip())
+            if m:
+                project_ms.append(int(m.group(1)))
+    return {
+        'methods': methods,
+        'seconds': round(seconds, 2),
+        'methods_per_sec': round(methods / seconds, 1),
+        'peak_rss_mb': round(usage.ru_maxrss / 1024, 1),
+        'project_p50_ms': percentile(project_ms, 50),
+        'project_p95_ms': percentile(project_ms, 95),
+        'project_max_ms': max(project_ms, default=0),
+    }
+
+
+def regressions(result, baseline, tolerance):
+    """Returns the metrics of `result` that are worse than `baseline` by more than `tolerance`."""
+    worse = []
+    if result['methods_per_sec'] < baseline['methods_per_sec'] * (1 - tolerance):
+        worse.append('methods_per_sec')
+    for key in ['peak_rss_mb', 'project_p95_ms', 'project_max_ms']:
+        if result[key] > baseline[key] * (1 + tolerance):
+            worse.append(key)
+    return worse
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument('--jar', default=DEFAULT_JAR)
+    parser.add_argument('--workers', type=int, nargs='+', default=[1, 2, 4])
+    parser.add_argument('--corpus', help='existing corpus to run on instead of generating one')
+    parser.add_argument('--projects', type=int, default=12)
+    parser.add_argument('--files_per_project', type=int, default=20)
+    parser.add_argument('--shape', default='mixed')
+    parser.add_argument('--seed', type=int, default=1)
+    parser.add_argument('--baseline', default=DEFAULT_BASELINE)
+    parser.add_argument('--update_baseline', action='store_true')
+    parser.add_argument('--tolerance', type=float, default=0.2, help='allowed relative regression of every metric')
+    parser.add_argument('extra', nargs='*', help='options passed to the preprocessor, after --')
+    args = parser.parse_args()
+
+    work_dir = tempfile.mkdtemp(prefix='ggnn-benchmark-')
+    try:
+        corpus = args.corpus
+        if corpus is None:
+            corpus = os.path.join(work_dir, 'corpus')
+            opts = synthetic_corpus.argument_parser().parse_args(
+                ['--output_dir', corpus, '--projects', str(args.projects), '--files_per_project',
+                 str(args.files_per_project), '--shape', args.shape, '--seed', str(args.seed)])
+            synthetic_corpus.generate(corpus, opts)
+            corpus_key = f'synthetic projects={args.projects} files={args.files_per_project} ' \
+                         f'shape={args.shape} seed={args.seed}'
+        else:
+            corpus_key = os.path.abspath(corpus)
+        if args.extra:
+            corpus_key += ' ' + ' '.join(args.extra)
+        corpus_key = f'cpus={os.cpu_count()} {corpus_key}'
+
+        baselines = {}
+        if os.path.exists(args.baseline):
+            with open(args.baseline) as f:
+                baselines = json.load(f)
+        stored = baselines.setdefault(corpus_key, {})
+
+        failed = False
+        print(f'{corpus_key}')
+        print(f'{"workers":>7} {"methods/s":>10} {"rss MB":>8} {"p50 ms":>8} {"p95 ms":>8} {"max ms":>8}  baseline')
+        for workers in args.workers:
+            result = run(args.jar, corpus, workers, args.extra, work_dir)
+            baseline = stored.get(str(workers))
+            if baseline is None:
+                verdict = 'none'
+            else:
+                worse = regressions(result, baseline, args.tolerance)
+                verdict = 'REGRESSED ' + ', '.join(worse) if worse else \
+                    f'ok ({baseline["methods_per_sec"]} methods/s, {baseline["peak_rss_mb"]} MB)'
+                failed |= bool(worse)
+            print(f'{workers:>7} {result["methods_per_sec"]:>10} {result["peak_rss_mb"]:>8} '
+                  f'{result["project_p50_ms"]:>8} {result["project_p95_ms"]:>8} {result["project_max_ms"]:>8}  {verdict}')
+            if args.update_baseline:
+                stored[str(workers)] = result
+
+        if args.update_baseline:
+            with open(args.baseline, 'w') as f:
+                json.dump(baselines, f, indent=2, sort_keys=True)
+                f.write('\n')
+        elif failed:
+            sys.exit(1)
+    finally:
+        shutil.rmtree(work_dir, ignore_errors=True)
+
+
+if __name__ == '__main__':
+    main()
@@ -0,0 +1,89 @@
+"""
+Checks that the output of the preprocessor does not depend on the degree of parallelism. Generates a synthetic
+corpus (see synthetic_corpus.py), extracts it once sequentially and once with parallel projects, files and methods,
+and compares every output file byte by byte.
+
+    python check_determinism.py
+    python check_determinism.py --corpus /path/to/dataset -- --dedup_methods --num_workers 1
+
+Exits with status 1 and lists the differing files if the outputs are not identical. Duplicates are removed across
+projects in the order the projects finish, so add --num_workers 1 to the extra options when checking --dedup_*.
+"""
+import argparse
+import filecmp
+import os
+import shutil
+import subprocess
+import sys
+import tempfile
+
+import synthetic_corpus
+
+ROOT = os.path.dirname(os.path.realpath(__file__))
+DEFAULT_JAR = os.path.join(ROOT, 'preprocessor', 'target', 'preprocessor-0.0.1-SNAPSHOT.jar')
+SEQUENTIAL = ['--num_workers', '1', '--io_threads', '0', '--parallel_methods', '0']
+PARALLEL = ['--num_workers', '4', '--io_threads', '4', '--file_workers', '4', '--parallel_methods', '2']
+
+
+def run(jar, corpus, options, name, work_dir):
+    output_dir = os.path.join(work_dir, f'output-{name}')
+    log_dir = os.path.join(work_dir, f'logs-{name}')
+    status = subprocess.call(['java', '-cp', jar, 'preprocessor.App', '--dataset', corpus, '--output_dir', output_dir,
+                              '--log_dir', log_dir] + options,
+                             stdout=subprocess.DEVNULL, stderr=subprocess.DEVNULL)
+    if status != 0:
+        sys.exit(f'{name} extraction failed with status {status}, see {log_dir}')
+    return output_dir
+
+
+def list_files(directory):
+    return sorted(os.path.relpath(os.path.join(d, f), directory) for d, _, fs in os.walk(directory) for f in fs)
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument('--jar', default=DEFAULT_JAR)
+    parser.add_argument('--corpus', help='existing corpus to run on instead of generating one')
+    parser.add_argument('--projects', type=int, default=8)
+    parser.add_argument('--files_per_project', type=int, default=20)
+    parser.add_argument('--seed', type=int, default=1)
+    parser.add_argument('--keep', action='store_true', help='keep the outputs for inspection')
+    parser.add_argument('extra', nargs='*', help='options passed to both runs, after --')
+    args = parser.parse_args()
+
+    work_dir = tempfile.mkdtemp(prefix='ggnn-determinism-')
+    try:
+        corpus = args.corpus
+        if corpus is None:
+            corpus = os.path.join(work_dir, 'corpus')
+            opts = synthetic_corpus.argument_parser().parse_args(
+                ['--output_dir', corpus, '--projects', str(args.projects), '--files_per_project',
+                 str(args.files_per_project), '--shape', 'mixed', '--seed', str(args.seed)])
+            synthetic_corpus.generate(corpus, opts)
+
+        expected = run(args.jar, corpus, SEQUENTIAL + args.extra, 'sequential', work_dir)
+        actual = run(args.jar, corpus, PARALLEL + args.extra, 'parallel', work_dir)
+
+        expected_files = list_files(expected)
+        actual_files = list_files(actual)
+        differing = sorted(set(expected_files) ^ set(actual_files))
+        for name in sorted(set(expected_files) & set(actual_files)):
+            if not filecmp.cmp(os.path.join(expected, name), os.path.join(actual, name), shallow=False):
+                differing.append(name)
+
+        if differing:
+            print(f'{len(differing)} of {len(expected_files)} files differ between '
+                  f'{" ".join(SEQUENTIAL)} and {" ".join(PARALLEL)}:')
+            for name in differing:
+                print(f'  {name}')
+            if args.keep:
+                print(f'outputs kept in {work_dir}')
+            sys.exit(1)
+        print(f'{len(expected_files)} files identical between {" ".join(SEQUENTIAL)} and {" ".join(PARALLEL)}')
+    finally:
+        if not args.keep:
+            shutil.rmtree(work_dir, ignore_errors=True)
+
+
+if __name__ == '__main__':
+    main()
@@ -1,7 +1,14 @@
+import glob
+import gzip
+import io
+import os
+import pickle
 import random
 from collections import deque
 from typing import Iterable
 
+import zlib
+
 import numpy as np
 import torch
 
@@ -31,13 +38,22 @@ class Vocabulary(object):
 
 class GraphDataloader(object):
 
-    def __init__(self, data_path: str, word_vocab: Vocabulary, target_vocab: Vocabulary):
+    def __init__(self, data_path: str, word_vocab: Vocabulary, target_vocab: Vocabulary, shuffle: bool = False):
         self.data_path = data_path
         self.word_vocab = word_vocab
         self.target_vocab = target_vocab
+        self.shuffle = shuffle
         self.chunks = deque()
-        with open(data_path, mode='r') as f:
-            self.n_data = sum(1 for line in f if line == '\n')
+        self.records = load_graph_index(data_path)
+        if self.records is not None:
+            # index があれば、頂点数が多すぎるレコードは読まずに飛ばす
+            self.records = [r for r in self.records if r[1] <= cfg.MAX_VERTICES]
+            self.n_data = len(self.records)
+        elif os.path.exists(data_path + BlockCompressedGraphFile.INDEX_SUFFIX):
+            self.n_data = len(BlockCompressedGraphFile(data_path))
+        else:
+            with open(data_path, mode='r') as f:
+                self.n_data = sum(1 for line in f if line == '\n')
 
     def __len__(self):
         return self.n_data // cfg.BATCH_SIZE
@@ -51,8 +67,16 @@ class GraphDataloader(object):
         am, vertices, target = map(list, zip(*samples))
         return torch.LongTensor(am), torch.LongTensor(vertices), torch.LongTensor(target)
 
+    def __open(self):
+        if os.path.exists(self.data_path + BlockCompressedGraphFile.INDEX_SUFFIX):
+            return BlockCompressedGraphFile(self.data_path)
+        return open(self.data_path, mode='r')
+
     def __generator(self):
-        with open(self.data_path, mode='r') as f:
+        if self.records is not None:
+            yield from self.__indexed_generator()
+            return
+        with self.__open() as f:
             while True:
                 head = f.readline()
                 while head == '\n':
@@ -70,6 +94,18 @@ class GraphDataloader(object):
                     while head != '\n':
                         head = f.readline()
 
+    def __indexed_generator(self):
+        order = list(self.records)
+        if self.shuffle:
+            random.shuffle(order)
+        with self.__open() as f:
+            for offset, num_vertices, num_edges, method_name in order:
+                f.seek(offset)
+                f.readline()
+                vertices = f.readline().rstrip().split()
+                edges = [tuple(map(int, f.readline().rstrip().split())) for _ in range(num_edges)]
+                yield method_name, num_vertices, vertices, edges
+
     def __next_batch_samples(self):
         if len(self.chunks) == 0:
             self.__load_chunks()
@@ -112,3 +148,237 @@ class GraphDataloader(object):
             a[tgt_idx][(e_type - 1) * n_nodes + src_idx] = 1
             a[src_idx][(e_type - 1 + n_edge_types) * n_nodes + tgt_idx] = 1
         return a
+
+
+def load_graph_index(data_path: str):
+    """
+    Reads the .idx index the preprocessor writes next to each .graph output, as a list of
+    (offset, num_vertices, num_edges, target), or returns None if there is no index.
+    """
+    index_path = data_path + '.idx'
+    if not os.path.exists(index_path):
+        return None
+    with open(index_path, mode='r') as f:
+        records = []
+        for line in f:
+            offset, num_vertices, num_edges, target = line.rstrip('\n').split(' ', 3)
+            records.append((int(offset), int(num_vertices), int(num_edges), target))
+        return records
+
+
+class BlockCompressedGraphFile(object):
+    """
+    Reads the .graph.gz / .graph.deflate files written by the preprocessor with --compress.
+    Any block can be read on its own through the block index; readline() goes through the blocks in order.
+    """
+
+    INDEX_SUFFIX = '.blocks'
+
+    def __init__(self, data_path: str):
+        self.data_path = data_path
+        with open(data_path + self.INDEX_SUFFIX, mode='r') as f:
+            codec, _, n_records = f.readline().split()
+            # (offset, length, uncompressed_offset, uncompressed_length, first_record, n_records)
+            self.blocks = [tuple(map(int, line.split())) for line in f]
+        self.decompress = gzip.decompress if codec == 'GZIP' else zlib.decompress
+        self.n_records = int(n_records)
+        self.f = None
+        self.next_block = 0
+        self.current = io.StringIO()
+        self.cached_block, self.cached_data = None, None
+
+    def __len__(self):
+        return self.n_records
+
+    def find_block(self, record: int) -> int:
+        lo, hi = 0, len(self.blocks) - 1
+        while lo < hi:
+            mid = (lo + hi + 1) // 2
+            if self.blocks[mid][4] <= record:
+                lo = mid
+            else:
+                hi = mid - 1
+        return lo
+
+    def read_block(self, i: int) -> str:
+        return self.__read_block_bytes(i).decode('utf-8')
+
+    def __read_block_bytes(self, i: int) -> bytes:
+        offset, length = self.blocks[i][:2]
+        if self.f is None:
+            self.f = open(self.data_path, mode='rb')
+        self.f.seek(offset)
+        return self.decompress(self.f.read(length))
+
+    def seek(self, offset: int):
+        """Moves to a byte offset of the uncompressed text, as found in the .idx record index."""
+        lo, hi = 0, len(self.blocks) - 1
+        while lo < hi:
+            mid = (lo + hi + 1) // 2
+            if self.blocks[mid][2] <= offset:
+                lo = mid
+            else:
+                hi = mid - 1
+        if self.cached_block != lo:
+            self.cached_block, self.cached_data = lo, self.__read_block_bytes(lo)
+        self.current = io.StringIO(self.cached_data[offset - self.blocks[lo][2]:].decode('utf-8'))
+        self.next_block = lo + 1
+
+    def readline(self):
+        line = self.current.readline()
+        while line == '' and self.next_block < len(self.blocks):
+            self.current = io.StringIO(self.read_block(self.next_block))
+            self.next_block += 1
+            line = self.current.readline()
+        return line
+
+    def close(self):
+        if self.f is not None:
+            self.f.close()
+            self.f = None
+
+    def __enter__(self):
+        return self
+
+    def __exit__(self, *args):
+        self.close()
+
+
+class PackedGraphDataloader(object):
+    """
+    Reads the blocks written by the preprocessor with --pack_capacity.
+    Each block holds several graphs as disconnected components, so a batch yields a segment id per vertex
+    (the index of the graph it belongs to, or -1 for padding) and the targets padded with IGNORE_TARGET.
+    """
+
+    IGNORE_TARGET = -100  # CrossEntropyLoss の ignore_index
+
+    def __init__(self, data_path: str, word_vocab: Vocabulary, target_vocab: Vocabulary):
+        self.data_path = data_path
+        self.word_vocab = word_vocab
+        self.target_vocab = target_vocab
+        with open(data_path, mode='r') as f:
+            self.n_data = sum(1 for line in f if line == '\n')
+
+    def __len__(self):
+        return self.n_data // cfg.BATCH_SIZE
+
+    def __iter__(self):
+        self.data = self.__generator()
+        return self
+
+    def __next__(self):
+        blocks = []
+        for _ in range(cfg.BATCH_SIZE):
+            blocks.append(self.data.__next__())
+        max_graphs = max(len(targets) for targets, _, _, _ in blocks)
+        am, vertices, segments, targets = [], [], [], []
+        for block_targets, offsets, labels, edges in blocks:
+            am.append(self.__create_adjacency_matrix(edges))
+            words = [self.__pad(v.split('|'), cfg.MAX_WORD_PARTS) for v in labels]
+            words += [['<pad>'] * cfg.MAX_WORD_PARTS] * (cfg.MAX_VERTICES - len(words))
+            vertices.append([[self.word_vocab.lookup_idx(subword) for subword in word] for word in words])
+            segment = [-1] * cfg.MAX_VERTICES
+            bounds = offsets + [len(labels)]
+            for g in range(len(offsets)):
+                segment[bounds[g]:bounds[g + 1]] = [g] * (bounds[g + 1] - bounds[g])
+            segments.append(segment)
+            ids = [self.target_vocab.lookup_idx(t) for t in block_targets]
+            targets.append(ids + [self.IGNORE_TARGET] * (max_graphs - len(ids)))
+        return torch.LongTensor(am), torch.LongTensor(vertices), torch.LongTensor(segments), torch.LongTensor(targets)
+
+    def __generator(self):
+        with open(self.data_path, mode='r') as f:
+            while True:
+                head = f.readline()
+                while head == '\n':
+                    head = f.readline()
+                if head == '':
+                    break
+                num_graphs, num_vertices, num_edges = map(int, head.split())
+                targets = f.readline().rstrip().split()
+                offsets = list(map(int, f.readline().split()))
+                labels = f.readline().rstrip().split()
+                edges = [tuple(map(int, f.readline().split())) for _ in range(num_edges)]
+                if num_vertices > cfg.MAX_VERTICES:
+                    continue
+                yield targets, offsets, labels, edges
+
+    def __pad(self, arr, length):
+        if len(arr) >= length:
+            return random.sample(arr, length)
+        else:
+            return arr + ['<pad>'] * (length - len(arr))
+
+    def __create_adjacency_matrix(self, edges):
+        n_nodes, n_edge_types = cfg.MAX_VERTICES, cfg.MAX_EDGE_TYPES
+        a = np.zeros([n_nodes, n_nodes * n_edge_types * 2])
+        for src_idx, tgt_idx, e_type in edges:
+            a[tgt_idx][(e_type - 1) * n_nodes + src_idx] = 1
+            a[src_idx][(e_type - 1 + n_edge_types) * n_nodes + tgt_idx] = 1
+        return a
+
+
+def dump_vocabulary_text(vocabulary_path: str, word_path: str, target_path: str):
+    """
+    Writes the vocabularies pickled in vocabulary_path as text files, one word per line in id order,
+    for the --npy_word_vocab / --npy_target_vocab options of the preprocessor.
+    """
+    with open(vocabulary_path, 'rb') as f:
+        words, targets = pickle.load(f).keys(), pickle.load(f).keys()
+    for path, vocab in [(word_path, words), (target_path, targets)]:
+        with open(path, mode='w') as f:
+            f.writelines(f'{word}\n' for word in vocab)
+
+
+class NpyShardDataloader(object):
+    """
+    Reads the NumPy shards written by the preprocessor with --npy_word_vocab.
+    The shards are memory-mapped and already hold vocabulary ids, so only the adjacency matrices are built here.
+    """
+
+    def __init__(self, data_path: str, shuffle: bool = True):
+        self.shuffle = shuffle
+        self.shards = []
+        for shard_dir in sorted(glob.glob(f'{data_path}/**/*.npy/*/', recursive=True)):
+            shard = {name: np.load(os.path.join(shard_dir, f'{name}.npy'), mmap_mode='r')
+                     for name in ['vertices', 'edges', 'vertex_offsets', 'edge_offsets', 'targets']}
+            self.shards.append(shard)
+        self.samples = [(i, g) for i, shard in enumerate(self.shards) for g in range(len(shard['targets']))
+                        if shard['vertex_offsets'][g + 1] - shard['vertex_offsets'][g] <= cfg.MAX_VERTICES]
+        self.n_data = len(self.samples)
+
+    def __len__(self):
+        return self.n_data // cfg.BATCH_SIZE
+
+    def __iter__(self):
+        self.order = list(self.samples)
+        if self.shuffle:
+            random.shuffle(self.order)
+        self.pos = 0
+        return self
+
+    def __next__(self):
+        if self.pos + cfg.BATCH_SIZE > len(self.order):
+            raise StopIteration
+        batch = self.order[self.pos:self.pos + cfg.BATCH_SIZE]
+        self.pos += cfg.BATCH_SIZE
+        am, vertices, target = [], [], []
+        for shard_idx, g in batch:
+            shard = self.shards[shard_idx]
+            v_begin, v_end = shard['vertex_offsets'][g], shard['vertex_offsets'][g + 1]
+            e_begin, e_end = shard['edge_offsets'][g], shard['edge_offsets'][g + 1]
+            v = np.full([cfg.MAX_VERTICES, shard['vertices'].shape[1]], 1, dtype=np.int64)  # 1 = <pad>
+            v[:v_end - v_begin] = shard['vertices'][v_begin:v_end]
+            am.append(self.__create_adjacency_matrix(shard['edges'][e_begin:e_end]))
+            vertices.append(v)
+            target.append(int(shard['targets'][g]))
+        return torch.from_numpy(np.stack(am)).long(), torch.from_numpy(np.stack(vertices)), torch.LongTensor(target)
+
+    def __create_adjacency_matrix(self, edges):
+        n_nodes, n_edge_types = cfg.MAX_VERTICES, cfg.MAX_EDGE_TYPES
+        a = np.zeros([n_nodes, n_nodes * n_edge_types * 2])
+        src, tgt, e_type = edges[:, 0], edges[:, 1], edges[:, 2].astype(np.int64) - 1
+        a[tgt, e_type * n_nodes + src] = 1
+        a[src, (e_type + n_edge_types) * n_nodes + tgt] = 1
+        return a
@@ -114,7 +114,7 @@ class GGNN(nn.Module):
                 m.weight.data.normal_(0.0, 0.02)
                 m.bias.data.fill_(0)
 
-    def forward(self, prop_state, A):
+    def forward(self, prop_state, A, segments=None):
         for i_step in range(self.n_steps):
             in_states = []
             out_states = []
@@ -133,6 +133,14 @@ class GGNN(nn.Module):
         # aw: (batch_size, n_vertices, 1)
         # TODO print(aw) 何故か全ての要素が 0.5 になるけど…
         output = torch.mul(prop_state, aw)
+        if segments is not None:
+            # packed block: 同じ segment (= グラフ) に属する頂点ごとに和を取る
+            # segments: (batch_size, n_vertices), padding の頂点は -1
+            n_graphs = int(segments.max().item()) + 1
+            output = output * (segments >= 0).float().unsqueeze(2)
+            index = segments.clamp(min=0).unsqueeze(2).expand(-1, -1, output.shape[2])
+            pooled = output.new_zeros(output.shape[0], n_graphs, output.shape[2])
+            return pooled.scatter_add_(1, index, output)
         output = output.sum(1)
         return output
 
@@ -145,7 +153,7 @@ class CodeGGNN(nn.Module):
         self.ggnn = GGNN(embedding_dim)
         self.out = nn.Linear(embedding_dim, target_vocab_size)
     
-    def forward(self, am, vertices):
+    def forward(self, am, vertices, segments=None):
         # am: (batch_size, n_vertices, n_vertices * 2)
         # vertices: (batch_size, n_vertices, max_word_parts)
 
@@ -157,7 +165,7 @@ class CodeGGNN(nn.Module):
         x = torch.mean(x, dim=2)
         # x: (batch_size, n_vertices, embedding_dim)
 
-        h_g = self.ggnn(x, am)  # h_g: (batch_size, embedding_dim)
+        h_g = self.ggnn(x, am, segments)  # h_g: (batch_size, embedding_dim) or (batch_size, n_graphs, embedding_dim)
 
-        output = self.out(h_g)  # output: (batch_size, target_vocab_size)
+        output = self.out(h_g)  # output: (batch_size, target_vocab_size) or (batch_size, n_graphs, target_vocab_size)
         return output
\ No newline at end of file
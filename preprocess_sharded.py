@@ -0,0 +1,40 @@
+"""
+Runs the preprocessor as several independent shard processes on this machine and merges their outputs,
+the same way separate hosts would each run one --shard_index and a final --merge would combine them.
+
+    python preprocess_sharded.py --dataset data/java-small --output_dir data/graphs --shards 4 -- --num_workers 2
+"""
+import argparse
+import os
+import subprocess
+import sys
+
+DEFAULT_JAR = os.path.join(os.path.dirname(os.path.realpath(__file__)),
+                           'preprocessor', 'target', 'preprocessor-0.0.1-SNAPSHOT.jar')
+
+
+def main():
+    parser = argparse.ArgumentParser()
+    parser.add_argument('--dataset', required=True)
+    parser.add_argument('--output_dir', required=True)
+    parser.add_argument('--shards', type=int, required=True)
+    parser.add_argument('--jar', default=DEFAULT_JAR)
+    parser.add_argument('--log_dir', default='./logs')
+    parser.add_argument('extra', nargs='*', help='options passed to every shard, after --')
+    args = parser.parse_args()
+
+    shard_dirs = [os.path.join(args.output_dir, f'shard-{i}') for i in range(args.shards)]
+    procs = [subprocess.Popen(['java', '-cp', args.jar, 'preprocessor.App',
+                               '--dataset', args.dataset, '--output_dir', shard_dir, '--log_dir', args.log_dir,
+                               '--shard_index', str(i), '--shard_count', str(args.shards)] + args.extra)
+             for i, shard_dir in enumerate(shard_dirs)]
+    failed = [i for i, p in enumerate(procs) if p.wait() != 0]
+    if failed:
+        sys.exit(f'shards {failed} failed')
+
+    subprocess.run(['java', '-cp', args.jar, 'preprocessor.App',
+                    '--merge'] + shard_dirs + ['--output_dir', args.output_dir], check=True)
+
+
+if __name__ == '__main__':
+    main()
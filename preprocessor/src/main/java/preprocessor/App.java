@@ -2,7 +2,13 @@ package preprocessor;
 
 import org.kohsuke.args4j.CmdLineException;
 
+import java.nio.file.FileSystem;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class App {
 
@@ -12,8 +18,16 @@ public class App {
             opt = new CommandLineValues(args);
         } catch (CmdLineException e) {
             e.printStackTrace();
+            System.exit(2);
             return;
         }
+        // 失敗したら非ゼロで終了し、呼び出し側のスクリプトに知らせる
+        if (!run(opt)) {
+            System.exit(1);
+        }
+    }
+
+    private static boolean run(CommandLineValues opt) {
         GraphExtractionConfig cfg = new GraphExtractionConfig(opt);
 
         if (opt.file != null) {
@@ -25,14 +39,46 @@ public class App {
                 }
             } catch (Exception e) {
                 e.printStackTrace();
+                return false;
             }
         } else if (opt.project != null) {
-            ProjectExtractionTask task = new ProjectExtractionTask(opt.project.toFile(), opt.outputDir, cfg);
-            task.run();
+            if (Archives.isZip(opt.project)) {
+                try (FileSystem zipFs = Archives.openZip(opt.project)) {
+                    ProjectSource source = new DirectoryProjectSource(Archives.zipRoot(zipFs, cfg.archiveRoot), Archives.baseName(opt.project));
+                    ProjectExtractionTask task = new ProjectExtractionTask(source, opt.outputDir, cfg);
+                    task.run();
+                    return task.isComplete();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    return false;
+                }
+            } else if (Archives.isTar(opt.project)) {
+                ProjectSource source = new TarProjectSource(opt.project, cfg.archiveRoot);
+                ProjectExtractionTask task = new ProjectExtractionTask(source, opt.outputDir, cfg);
+                task.run();
+                return task.isComplete();
+            } else {
+                ProjectExtractionTask task = new ProjectExtractionTask(new DirectoryProjectSource(opt.project), opt.outputDir, cfg);
+                task.run();
+                return task.isComplete();
+            }
         } else if (opt.dataset != null) {
             DatasetExtractionTask task = new DatasetExtractionTask(opt.dataset, opt.outputDir, opt.numWorkers, cfg, opt.logDir);
             task.run();
+            return !task.hasFailed();
+        } else if (opt.merge.length > 0) {
+            List<Path> shardDirs = Stream.of(opt.merge).map(Paths::get).collect(Collectors.toList());
+            ShardMergeTask task = new ShardMergeTask(shardDirs, opt.outputDir);
+            task.run();
+            return !task.hasFailed();
+        } else if (opt.assemble != null) {
+            Set<String> shuffled = Stream.of(opt.shuffleDataTypes.split(",")).map(String::trim).collect(Collectors.toSet());
+            DatasetAssemblyTask task = new DatasetAssemblyTask(opt.assemble, opt.outputDir, opt.numWorkers, shuffled,
+                    opt.shuffleSeed, opt.shuffleBucketMb * 1024L * 1024L);
+            task.run();
+            return !task.hasFailed();
         }
+        return true;
     }
 
 }
@@ -0,0 +1,57 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+
+public class Archives {
+
+    public static boolean isZip(Path path) {
+        return path.getFileName().toString().endsWith(".zip");
+    }
+
+    public static boolean isTar(Path path) {
+        String name = path.getFileName().toString();
+        return name.endsWith(".tar") || name.endsWith(".tar.gz") || name.endsWith(".tgz");
+    }
+
+    public static String baseName(Path archive) {
+        String name = archive.getFileName().toString();
+        for (String ext : new String[]{".tar.gz", ".tgz", ".tar", ".zip"}) {
+            if (name.endsWith(ext)) {
+                return name.substring(0, name.length() - ext.length());
+            }
+        }
+        return name;
+    }
+
+    public static FileSystem openZip(Path archive) throws IOException {
+        return FileSystems.newFileSystem(archive, (ClassLoader) null);
+    }
+
+    public static Path zipRoot(FileSystem zipFs, String archiveRoot) {
+        return zipFs.getPath("/").resolve(archiveRoot);
+    }
+
+    /**
+     * Returns the entry name relative to archiveRoot, or null if the entry is outside of it.
+     */
+    public static String relativize(String entryName, String archiveRoot) {
+        String name = entryName;
+        while (name.startsWith("./") || name.startsWith("/")) {
+            name = name.substring(name.indexOf('/') + 1);
+        }
+        String root = archiveRoot;
+        while (root.startsWith("/")) {
+            root = root.substring(1);
+        }
+        if (root.isEmpty()) {
+            return name;
+        }
+        if (!root.endsWith("/")) {
+            root += "/";
+        }
+        return name.startsWith(root) ? name.substring(root.length()) : null;
+    }
+}
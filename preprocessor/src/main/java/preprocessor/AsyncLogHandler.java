@@ -0,0 +1,134 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * Hands log records to a background thread that formats and writes them with the wrapped handler, so workers do
+ * not wait for the log file. The thread polls the queue every few milliseconds instead of being woken for each
+ * record. The queue is bounded: when it is full, records below WARNING are dropped (and counted)
+ * while warnings and errors wait for room.
+ */
+public class AsyncLogHandler extends Handler {
+
+    public interface HandlerFactory {
+        Handler create() throws IOException;
+    }
+
+    private static final int QUEUE_CAPACITY = 8192;
+    private static final long DRAIN_INTERVAL_MILLIS = 20;
+    private static final Map<String, AsyncLogHandler> installed = new HashMap<>();
+
+    private final Handler target;
+    private final BlockingQueue<LogRecord> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread appender;
+    private volatile boolean closed = false;
+
+    /**
+     * Adds the handler created by {@code factory} to the logger, behind an {@code AsyncLogHandler}, unless a
+     * handler was already installed under {@code key}. The logger stops passing records to the handlers of its
+     * parents (the root {@code ConsoleHandler}), which would otherwise still write them on the calling thread; any
+     * console output has to be installed here as well. Installed handlers are drained and closed at JVM exit.
+     */
+    public static synchronized void install(Logger logger, String key, HandlerFactory factory) throws IOException {
+        logger.setUseParentHandlers(false);
+        if (installed.containsKey(key)) {
+            return;
+        }
+        if (installed.isEmpty()) {
+            Runtime.getRuntime().addShutdownHook(new Thread(AsyncLogHandler::closeAll, "log-shutdown"));
+        }
+        AsyncLogHandler handler = new AsyncLogHandler(factory.create());
+        installed.put(key, handler);
+        logger.addHandler(handler);
+    }
+
+    private static void closeAll() {
+        List<AsyncLogHandler> handlers;
+        synchronized (AsyncLogHandler.class) {
+            handlers = new ArrayList<>(installed.values());
+        }
+        for (AsyncLogHandler handler : handlers) {
+            handler.close();
+        }
+    }
+
+    public AsyncLogHandler(Handler target) {
+        this.target = target;
+        this.appender = new Thread(this::drain, "log-appender");
+        this.appender.setDaemon(true);
+        this.appender.start();
+    }
+
+    @Override
+    public void publish(LogRecord record) {
+        if (closed || !isLoggable(record)) {
+            return;
+        }
+        record.getSourceMethodName();  // 呼び出し元の推定はワーカースレッド上で済ませておく
+        if (queue.offer(record)) {
+            return;
+        }
+        if (record.getLevel().intValue() < Level.WARNING.intValue()) {
+            dropped.incrementAndGet();
+            return;
+        }
+        try {
+            queue.put(record);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<LogRecord> batch = new ArrayList<>();
+        while (!closed || !queue.isEmpty()) {
+            try {
+                // 待機中のスレッドを起こすとその場で切り替わることがあるので、記録のたびには起こさず定期的にまとめて書く
+                if (queue.drainTo(batch) == 0) {
+                    Thread.sleep(DRAIN_INTERVAL_MILLIS);
+                    continue;
+                }
+                long n = dropped.getAndSet(0);
+                if (n > 0) {
+                    target.publish(new LogRecord(Level.WARNING, "log queue full, dropped " + n + " records"));
+                }
+                for (LogRecord r : batch) {
+                    target.publish(r);
+                }
+                batch.clear();
+                target.flush();
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void flush() {
+        target.flush();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            appender.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        target.close();
+    }
+}
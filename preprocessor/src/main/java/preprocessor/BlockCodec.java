@@ -0,0 +1,75 @@
+package preprocessor;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compression of the blocks of a {@link BlockCompressedGraphWriter}. Every block is compressed on its own,
+ * so any block can be decompressed without the others.
+ */
+public enum BlockCodec {
+    /** each block is a gzip member; the whole file is still a valid gzip stream readable by zcat */
+    GZIP(".gz") {
+        @Override
+        byte[] compress(byte[] data) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+            try (GZIPOutputStream gz = new GZIPOutputStream(out, 1 << 16)) {
+                gz.write(data);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return out.toByteArray();
+        }
+
+        @Override
+        InputStream decompress(byte[] block) throws IOException {
+            return new GZIPInputStream(new ByteArrayInputStream(block), 1 << 16);
+        }
+    },
+    /** each block is a zlib stream (zlib.decompress in Python) */
+    DEFLATE(".deflate") {
+        @Override
+        byte[] compress(byte[] data) {
+            Deflater deflater = new Deflater();
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4 + 64);
+                byte[] buf = new byte[1 << 16];
+                while (!deflater.finished()) {
+                    out.write(buf, 0, deflater.deflate(buf));
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        InputStream decompress(byte[] block) {
+            return new InflaterInputStream(new ByteArrayInputStream(block), new Inflater(), 1 << 16);
+        }
+    };
+
+    private final String extension;
+
+    BlockCodec(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+
+    abstract byte[] compress(byte[] data);
+
+    abstract InputStream decompress(byte[] block) throws IOException;
+}
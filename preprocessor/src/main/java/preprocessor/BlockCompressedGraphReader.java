@@ -0,0 +1,85 @@
+package preprocessor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Random access to a file written by {@link BlockCompressedGraphWriter}: any block, or the block holding a given
+ * record, is read and decompressed on its own through the block index.
+ */
+public class BlockCompressedGraphReader implements AutoCloseable {
+
+    private final RandomAccessFile file;
+    private final BlockCodec codec;
+    private final long numRecords;
+    private final long[][] blocks;  // offset length uncompressedOffset uncompressedLength firstRecord numRecords
+    private final long[] firstRecords;
+
+    public BlockCompressedGraphReader(Path dataFile) throws IOException {
+        List<String> lines = Files.readAllLines(dataFile.resolveSibling(dataFile.getFileName() + BlockCompressedGraphWriter.INDEX_SUFFIX));
+        String[] header = lines.get(0).split(" ");
+        this.codec = BlockCodec.valueOf(header[0]);
+        this.numRecords = Long.parseLong(header[2]);
+        List<long[]> blockList = new ArrayList<>();
+        for (String line : lines.subList(1, lines.size())) {
+            blockList.add(Arrays.stream(line.split(" ")).mapToLong(Long::parseLong).toArray());
+        }
+        this.blocks = blockList.toArray(new long[0][]);
+        this.firstRecords = blockList.stream().mapToLong(b -> b[4]).toArray();
+        this.file = new RandomAccessFile(dataFile.toFile(), "r");
+    }
+
+    public int getNumBlocks() {
+        return blocks.length;
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Index of the block holding the given record.
+     */
+    public int findBlock(long record) {
+        if (record < 0 || record >= numRecords) {
+            throw new IndexOutOfBoundsException("record " + record + " of " + numRecords);
+        }
+        int i = Arrays.binarySearch(firstRecords, record);
+        return i >= 0 ? i : -i - 2;
+    }
+
+    public long getUncompressedSize() {
+        return blocks.length == 0 ? 0 : blocks[blocks.length - 1][2] + blocks[blocks.length - 1][3];
+    }
+
+    public long getFirstRecord(int block) {
+        return blocks[block][4];
+    }
+
+    /**
+     * Opens the decompressed text of a block, which starts at the first line of its first record.
+     */
+    public BufferedReader openBlock(int block) throws IOException {
+        byte[] compressed = new byte[(int) blocks[block][1]];
+        synchronized (file) {
+            file.seek(blocks[block][0]);
+            file.readFully(compressed);
+        }
+        InputStream in = codec.decompress(compressed);
+        return new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+}
@@ -0,0 +1,119 @@
+package preprocessor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes the text format of {@link TextGraphWriter} as independently compressed blocks of whole records, plus a
+ * block index {@code <file>.blocks}:
+ * <pre>
+ * codec numBlocks numRecords
+ * offset length uncompressedOffset uncompressedLength firstRecord numRecords      (one line per block)
+ * </pre>
+ * Each block is compressed on the worker writing the project as soon as it is full, so compression runs with the
+ * parallelism of {@code --num_workers} and no other pool. The record index {@code <file>.idx} of
+ * {@link GraphIndexWriter} holds uncompressed offsets.
+ */
+public class BlockCompressedGraphWriter implements GraphWriter {
+
+    public static final String INDEX_SUFFIX = ".blocks";
+
+    private final Path dataFile;
+    private final BlockCodec codec;
+    private final int blockSize;
+    private final GraphIndexWriter index;
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+    private final List<Block> written = new ArrayList<>();
+    private OutputStream out;
+    private long numRecords = 0;
+    private int bufferedRecords = 0;
+    private long offset = 0;
+    private long uncompressedOffset = 0;
+
+    private static class Block {
+        long offset;
+        long length;
+        long uncompressedOffset;
+        int uncompressedLength;
+        long firstRecord;
+        int numRecords;
+    }
+
+    public BlockCompressedGraphWriter(Path dataFile, BlockCodec codec, int blockSize) {
+        this.dataFile = dataFile;
+        this.codec = codec;
+        this.blockSize = blockSize;
+        this.index = new GraphIndexWriter(dataFile);
+    }
+
+    @Override
+    public void write(Graph graph) throws IOException {
+        index.add(uncompressedOffset + buffer.size(), graph);
+        GraphSerializer serializer = GraphSerializer.get();
+        serializer.serialize(graph);
+        serializer.writeTo(buffer);
+        bufferedRecords++;
+        if (buffer.size() >= blockSize) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+        if (numRecords == 0 && bufferedRecords == 0) {
+            return;  // TextGraphWriter と同じく、グラフが無ければファイルを作らない
+        }
+        writeBlock();
+        out.close();
+        try (Writer iw = Files.newBufferedWriter(dataFile.resolveSibling(dataFile.getFileName() + INDEX_SUFFIX),
+                StandardCharsets.UTF_8)) {
+            iw.write(codec + " " + written.size() + " " + numRecords + "\n");
+            for (Block b : written) {
+                iw.write(b.offset + " " + b.length + " " + b.uncompressedOffset + " " + b.uncompressedLength
+                        + " " + b.firstRecord + " " + b.numRecords + "\n");
+            }
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (bufferedRecords == 0) {
+            return;
+        }
+        byte[] data = buffer.toByteArray();
+        buffer.reset();
+        byte[] compressed;
+        try {
+            compressed = codec.compress(data);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        if (out == null) {
+            out = new BufferedOutputStream(new FileOutputStream(dataFile.toFile()), 1 << 16);
+        }
+        out.write(compressed);
+
+        Block block = new Block();
+        block.offset = offset;
+        block.length = compressed.length;
+        block.uncompressedOffset = uncompressedOffset;
+        block.uncompressedLength = data.length;
+        block.firstRecord = numRecords;
+        block.numRecords = bufferedRecords;
+        written.add(block);
+        offset += compressed.length;
+        uncompressedOffset += data.length;
+        numRecords += bufferedRecords;
+        bufferedRecords = 0;
+    }
+}
@@ -0,0 +1,19 @@
+package preprocessor;
+
+import com.github.javaparser.ast.Node;
+
+import static preprocessor.Graph.EdgeType;
+import static preprocessor.Graph.Vertex;
+
+/**
+ * CHILD edges from each AST node to its children.
+ */
+public class ChildEdgeProducer implements EdgeProducer {
+
+    @Override
+    public void visit(GraphBuilder graph, Node node, Vertex vertex, Vertex parent) {
+        if (parent != null) {
+            graph.addEdge(parent, vertex, EdgeType.CHILD);
+        }
+    }
+}
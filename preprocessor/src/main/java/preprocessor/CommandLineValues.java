@@ -3,6 +3,7 @@ package preprocessor;
 import org.kohsuke.args4j.CmdLineException;
 import org.kohsuke.args4j.CmdLineParser;
 import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.spi.StringArrayOptionHandler;
 
 import java.io.File;
 import java.nio.file.Path;
@@ -21,24 +22,158 @@ public class CommandLineValues {
     @Option(name = "--project", required = false, forbids = {"--file", "--dataset"})
     public Path project;
 
+    @Option(name = "--merge", required = false, handler = StringArrayOptionHandler.class, forbids = {"--file", "--project", "--dataset"},
+            usage = "merge the output directories of the shards of a --shard_count run into --output_dir")
+    public String[] merge = new String[0];
+
+    @Option(name = "--assemble", required = false, forbids = {"--file", "--project", "--dataset", "--merge"},
+            usage = "assemble the per-project graph files of an extraction run into one <dataType>.graph per data type in --output_dir")
+    public Path assemble = null;
+
+    @Option(name = "--shuffle_data_types", required = false, usage = "comma separated data types that --assemble shuffles globally")
+    public String shuffleDataTypes = "training";
+
+    @Option(name = "--shuffle_seed", required = false, usage = "seed of the --assemble shuffle")
+    public long shuffleSeed = 0;
+
+    @Option(name = "--shuffle_bucket_mb", required = false, usage = "size of the temporary buckets of the --assemble shuffle; up to --num_workers of them are held in memory")
+    public int shuffleBucketMb = 256;
+
+    @Option(name = "--shard_index", required = false, depends = "--shard_count", usage = "index of the shard of --dataset to extract, from 0")
+    public int shardIndex = 0;
+
+    @Option(name = "--shard_count", required = false, usage = "number of independent processes the projects of --dataset are split between")
+    public int shardCount = 1;
+
+    @Option(name = "--compress", required = false, forbids = {"--output_in_package", "--pack_capacity", "--npy_word_vocab"},
+            usage = "GZIP or DEFLATE: write .graph files as independently compressed blocks with a block index")
+    public BlockCodec compress = null;
+
+    @Option(name = "--compress_block_size", required = false, usage = "uncompressed bytes of graph text per compressed block")
+    public int compressBlockSize = 1 << 20;
+
+    @Option(name = "--pack_capacity", required = false, forbids = "--output_in_package", usage = "pack graphs into blocks of at most this many vertices (0: one graph per record)")
+    public int packCapacity = 0;
+
+    @Option(name = "--pack_window", required = false, usage = "number of graphs buffered per project before they are packed")
+    public int packWindow = 1024;
+
+    @Option(name = "--npy_word_vocab", required = false, depends = "--npy_target_vocab", forbids = {"--output_in_package", "--pack_capacity"},
+            usage = "write NumPy shards with subtoken ids from this vocabulary (one word per line, ids start at 2)")
+    public Path npyWordVocab = null;
+
+    @Option(name = "--npy_target_vocab", required = false, depends = "--npy_word_vocab", usage = "target vocabulary of the NumPy shards")
+    public Path npyTargetVocab = null;
+
+    @Option(name = "--npy_shard_size", required = false, usage = "number of graphs per NumPy shard")
+    public int npyShardSize = 10000;
+
+    @Option(name = "--max_word_parts", required = false, usage = "number of subtoken ids per vertex in NumPy shards")
+    public int maxWordParts = 5;
+
+    @Option(name = "--resolve_types", required = false, usage = "add the declared and inferred types of variables and expressions as TYPE vertices")
+    public boolean resolveTypes = false;
+
+    @Option(name = "--type_resolution_budget_ms", required = false, usage = "time after which type resolution gives up on the rest of a method")
+    public long typeResolutionBudgetMs = 500;
+
+    @Option(name = "--sample_rate", required = false,
+            usage = "fraction of inputs to keep, e.g. 0.05 or training=0.01,validation=0.1 (data types without an entry keep everything unless a bare default is given)")
+    public String sampleRate = "1.0";
+
+    @Option(name = "--sample_level", required = false, usage = "PROJECT, FILE or METHOD: granularity at which --sample_rate is applied")
+    public Sampler.Level sampleLevel = Sampler.Level.FILE;
+
+    @Option(name = "--sample_seed", required = false, usage = "seed of the sampling hash; change it to draw a different subset")
+    public long sampleSeed = 0;
+
+    @Option(name = "--sample_max_methods_per_project", required = false, usage = "stop extracting a project after this many methods (0: no limit)")
+    public int sampleMaxMethodsPerProject = 0;
+
+    @Option(name = "--subtoken_cache_size", required = false, usage = "number of token texts whose subtoken split is memoised by each project (0: no cache)")
+    public int subtokenCacheSize = 1 << 16;
+
+    @Option(name = "--archive_root", required = false, usage = "directory inside a .zip/.tar.gz dataset or project to treat as its root")
+    public String archiveRoot = "";
+
     @Option(name = "--output_dir", required = false, forbids = "--file")
     public Path outputDir = new File("./output").toPath();
 
     @Option(name = "--log_dir", required = false)
     public Path logDir = Paths.get("./logs");
 
-    @Option(name = "--num_workers", required = false)
+    @Option(name = "--num_workers", required = false, usage = "number of projects extracted in parallel; the initial number with --adaptive_workers")
     public int numWorkers = 1;
 
+    @Option(name = "--io_threads", required = false,
+            usage = "threads listing directories and reading source files ahead of the workers; 0 to do both on the workers")
+    public int ioThreads = 0;
+
+    @Option(name = "--read_ahead_mb", required = false, usage = "source bytes each worker may have read ahead with --io_threads")
+    public int readAheadMb = 16;
+
+    @Option(name = "--reorder_vertices", required = false,
+            usage = "number the vertices of each graph in reverse Cuthill-McKee order instead of source order, to narrow the adjacency band")
+    public boolean reorderVertices = false;
+
+    @Option(name = "--parallel_methods", required = false,
+            usage = "convert the methods of files with at least this many methods in parallel; 0 to never (ignored with --resolve_types)")
+    public int parallelMethods = 0;
+
+    @Option(name = "--file_workers", required = false,
+            usage = "threads shared by all projects converting the files of a project in parallel; output keeps file order (ignored with --resolve_types)")
+    public int fileWorkers = 0;
+
+    @Option(name = "--adaptive_workers", required = false,
+            usage = "adjust the number of workers between --min_workers and --max_workers to maximise methods/sec, watching CPU and GC time")
+    public boolean adaptiveWorkers = false;
+
+    @Option(name = "--min_workers", required = false, depends = "--adaptive_workers", usage = "lower bound of --adaptive_workers")
+    public int minWorkers = 1;
+
+    @Option(name = "--max_workers", required = false, depends = "--adaptive_workers", usage = "upper bound of --adaptive_workers; defaults to the number of processors")
+    public int maxWorkers = Runtime.getRuntime().availableProcessors();
+
+    @Option(name = "--adaptive_interval_ms", required = false, depends = "--adaptive_workers", usage = "interval between two adjustments of --adaptive_workers")
+    public long adaptiveIntervalMs = 5_000;
+
     @Option(name = "--max_vertices", required = false)
     public int maxVertices = 500;
 
+    @Option(name = "--no_child_edges", required = false, usage = "do not emit CHILD edges")
+    public boolean noChildEdges = false;
+
+    @Option(name = "--no_next_token_edges", required = false, usage = "do not emit NEXT_TOKEN edges nor the token vertices that are not in the AST")
+    public boolean noNextTokenEdges = false;
+
+    @Option(name = "--no_data_flow_edges", required = false, usage = "do not emit LAST_USE, LAST_WRITE and COMPUTED_FROM edges")
+    public boolean noDataFlowEdges = false;
+
     @Option(name = "--exclude_boilerplates", required = false)
     public boolean excludeBoilerplates = false;
 
-    @Option(name = "--output_in_package", required = false)
+    @Option(name = "--output_in_package", required = false,
+            usage = "write the graphs of each package into <package>/segment.graph, with an index giving the offset of the N-th graph")
     public boolean outputInPackage = false;
 
+    @Option(name = "--memory_budget_mb", required = false, usage = "heap budget for files being extracted at the same time (0: unlimited)")
+    public long memoryBudgetMb = 0;
+
+    @Option(name = "--memory_per_source_byte", required = false, usage = "estimated heap bytes per byte of source while a file is extracted")
+    public double memoryPerSourceByte = 50;
+
+    @Option(name = "--oversized_files", required = false, usage = "SKIP or ALONE: how to handle files whose estimate exceeds the memory budget")
+    public MemoryBudget.OversizedPolicy oversizedFiles = MemoryBudget.OversizedPolicy.ALONE;
+
+    @Option(name = "--dedup_files", required = false, usage = "skip files whose content is byte-identical to an already extracted file")
+    public boolean dedupFiles = false;
+
+    @Option(name = "--dedup_methods", required = false, usage = "drop graphs whose method name, labels and edges are identical to an already extracted graph")
+    public boolean dedupMethods = false;
+
+    @Option(name = "--dedup_cross_split", required = false, usage = "NONE: deduplicate within each data type, KEEP_TRAINING: also drop copies of training data from the other data types")
+    public DedupIndex.CrossSplitPolicy dedupCrossSplit = DedupIndex.CrossSplitPolicy.NONE;
+
     public CommandLineValues(String... args) throws CmdLineException {
         CmdLineParser parser = new CmdLineParser(this);
         try {
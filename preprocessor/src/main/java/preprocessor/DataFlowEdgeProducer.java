@@ -0,0 +1,26 @@
+package preprocessor;
+
+import java.util.Comparator;
+
+import static preprocessor.Graph.Edge;
+
+/**
+ * LAST_USE, LAST_WRITE and COMPUTED_FROM edges computed by {@link DataFlowVisitor}. The data flow follows the
+ * control flow (branches are merged, loop bodies are visited twice), so it runs as its own walk after the traversal.
+ * The visitor collects the edges in a hash set, so they are sorted by their ends to be written in the same order by
+ * every JVM.
+ */
+public class DataFlowEdgeProducer implements EdgeProducer {
+
+    private static final Comparator<Edge> EDGE_ORDER = Comparator.<Edge>comparingInt(e -> e.getSrc().getId())
+            .thenComparingInt(e -> e.getDst().getId())
+            .thenComparing(Edge::getType);
+
+    @Override
+    public void finish(GraphBuilder graph) {
+        var dfv = new DataFlowVisitor(graph);
+        dfv.computeDataFlowEdges(graph.getMethod()).stream()
+                .sorted(EDGE_ORDER)
+                .forEachOrdered(graph.getEdges()::add);
+    }
+}
@@ -19,15 +19,14 @@ import static preprocessor.Graph.EdgeType;
 
 public class DataFlowVisitor extends VoidVisitorAdapter<Object> {
 
-    private final List<Vertex> vertices;
+    private final GraphBuilder graph;
 
     private Set<Edge> edges;
     private Stack<Map<String, Set<Node>>> varToLastUse;
     private Stack<Map<String, Set<Node>>> varToLastWrite;
-    private Map<Integer, Vertex> node2vertex;
 
-    public DataFlowVisitor(List<Vertex> vertices) {
-        this.vertices = vertices;
+    public DataFlowVisitor(GraphBuilder graph) {
+        this.graph = graph;
         init();
     }
 
@@ -35,19 +34,14 @@ public class DataFlowVisitor extends VoidVisitorAdapter<Object> {
         this.edges = new HashSet<>();
         this.varToLastUse = new Stack<>();
         this.varToLastWrite = new Stack<>();
-        this.node2vertex = new HashMap<>();
-        for (Vertex vertex : vertices) {
-            node2vertex.put(vertex.getId(), vertex);
-        }
     }
 
     private Vertex toV(Node node) {
-        int vertexId = node.getData(MethodToGraphConverter.VERTEX_ID);
-        if (node2vertex.containsKey(vertexId)) {
-            return node2vertex.get(vertexId);
-        } else {
-            throw new IllegalArgumentException("unknown vertex id: " + vertexId);
+        Vertex vertex = graph.getVertex(node);
+        if (vertex == null) {
+            throw new IllegalArgumentException("no vertex for node: " + node);
         }
+        return vertex;
     }
 
     public Set<Edge> computeDataFlowEdges(MethodDeclaration n) {
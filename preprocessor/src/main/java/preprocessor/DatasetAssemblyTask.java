@@ -0,0 +1,377 @@
+package preprocessor;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.LongToIntFunction;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Assembles the per-project graph files of an extraction run into one {@code <dataType>.graph} (with its
+ * {@code .idx} index) per data type, which is what the trainer reads.
+ * <p>
+ * The data types to shuffle are shuffled globally on disk with bounded memory. Every record gets a random 64-bit
+ * key and is scattered, in parallel, into the temporary bucket that holds its range of keys; the buckets are then
+ * loaded one at a time, sorted by key and appended in order. The result is a uniformly random permutation that only
+ * depends on the seed, and no more than {@code numWorkers} buckets are held in memory at once. At most 256 buckets
+ * are open at a time, with write buffers sharing the size of one bucket: larger inputs are first scattered into
+ * groups of 256 key ranges, and each group is then scattered into its buckets and gathered before the next one.
+ */
+public class DatasetAssemblyTask implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(DatasetAssemblyTask.class.getName());
+    private static final int MAX_BUCKETS = 1 << 16;
+    private static final int MAX_OPEN_BUCKETS = 256;  // 一般的な ulimit -n (1024) より十分小さく
+    private static final int MIN_BUFFER_BYTES = 4 << 10;
+    private static final int MAX_BUFFER_BYTES = 64 << 10;
+
+    private final Path datasetDir;
+    private final Path outputDir;
+    private final int numWorkers;
+    private final Set<String> shuffledDataTypes;
+    private final long seed;
+    private final long bucketBytes;
+    private boolean failed = false;
+
+    public DatasetAssemblyTask(Path datasetDir, Path outputDir, int numWorkers, Set<String> shuffledDataTypes,
+                               long seed, long bucketBytes) {
+        this.datasetDir = datasetDir;
+        this.outputDir = outputDir;
+        this.numWorkers = numWorkers;
+        this.shuffledDataTypes = shuffledDataTypes;
+        this.seed = seed;
+        this.bucketBytes = bucketBytes;
+    }
+
+    @Override
+    public void run() {
+        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        try {
+            Files.createDirectories(outputDir);
+            try (DirectoryStream<Path> dataTypes = Files.newDirectoryStream(datasetDir, Files::isDirectory)) {
+                for (Path dataTypeDir : sorted(dataTypes)) {
+                    String dataType = dataTypeDir.getFileName().toString();
+                    List<Path> inputs = listGraphFiles(dataTypeDir);
+                    if (inputs.isEmpty()) {
+                        continue;
+                    }
+                    Path output = outputDir.resolve(dataType + ".graph");
+                    long records = shuffledDataTypes.contains(dataType)
+                            ? shuffle(inputs, output, executor)
+                            : concatenate(inputs, output);
+                    logger.info("assembled " + records + " graphs from " + inputs.size() + " files into " + output
+                            + (shuffledDataTypes.contains(dataType) ? " in random order" : ""));
+                }
+            }
+        } catch (IOException | UncheckedIOException e) {
+            logger.log(Level.SEVERE, "failed to assemble " + datasetDir, e);
+            failed = true;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    private long concatenate(List<Path> inputs, Path output) throws IOException {
+        try (RecordOutput out = new RecordOutput(output)) {
+            for (Path input : inputs) {
+                forEachRecord(input, out::write);
+            }
+            return out.numRecords;
+        }
+    }
+
+    private long shuffle(List<Path> inputs, Path output, ExecutorService executor) throws IOException {
+        long totalBytes = 0;
+        for (Path input : inputs) {
+            totalBytes += uncompressedSize(input);
+        }
+        int numBuckets = (int) Math.max(1, Math.min(MAX_BUCKETS, (totalBytes + bucketBytes - 1) / bucketBytes));
+        int numGroups = (numBuckets + MAX_OPEN_BUCKETS - 1) / MAX_OPEN_BUCKETS;
+        Path tmpDir = Files.createTempDirectory(outputDir, ".shuffle-");
+        try (RecordOutput out = new RecordOutput(output)) {
+            if (numGroups == 1) {
+                gather(scatterInputs(inputs, tmpDir, "", numBuckets, key -> bucketOf(key, numBuckets), executor),
+                        out, executor);
+            } else {
+                // バケットが多すぎて一度に開けないときは、まず MAX_OPEN_BUCKETS 個ずつのグループに分け、グループごとに分け直す
+                Bucket[] groups = scatterInputs(inputs, tmpDir, "group-", numGroups,
+                        key -> bucketOf(key, numBuckets) / MAX_OPEN_BUCKETS, executor);
+                for (int g = 0; g < numGroups; g++) {
+                    int first = g * MAX_OPEN_BUCKETS;
+                    int size = Math.min(MAX_OPEN_BUCKETS, numBuckets - first);
+                    Bucket[] buckets = openBuckets(tmpDir, g + "-", size);
+                    groups[g].forEach((key, record) -> buckets[bucketOf(key, numBuckets) - first].write(key, record));
+                    groups[g].delete();
+                    closeAll(buckets);
+                    gather(buckets, out, executor);
+                }
+            }
+            return out.numRecords;
+        } finally {
+            try (Stream<Path> tmpFiles = Files.walk(tmpDir)) {
+                tmpFiles.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+            }
+        }
+    }
+
+    /**
+     * Final bucket of a key: the buckets split the key space into equal ranges, in order.
+     */
+    private static int bucketOf(long key, int numBuckets) {
+        return (int) (((key >>> 32) * numBuckets) >>> 32);
+    }
+
+    /**
+     * Gives every record of the inputs a random key and writes it to the bucket chosen by {@code bucketOf}.
+     */
+    private Bucket[] scatterInputs(List<Path> inputs, Path tmpDir, String prefix, int numBuckets,
+                                   LongToIntFunction bucketOf, ExecutorService executor) throws IOException {
+        Bucket[] buckets = openBuckets(tmpDir, prefix, numBuckets);
+        // scatter: 入力ファイルごとに独立した乱数列を使うので、結果はスレッドのスケジューリングに依らない
+        List<Future<?>> futures = new ArrayList<>();
+        for (Path input : inputs) {
+            SplittableRandom random = new SplittableRandom(Sampler.hash(seed, datasetDir.relativize(input).toString()));
+            futures.add(executor.submit(() -> {
+                forEachRecord(input, record -> {
+                    long key = random.nextLong();
+                    buckets[bucketOf.applyAsInt(key)].write(key, record);
+                });
+                return null;
+            }));
+        }
+        awaitAll(futures);
+        closeAll(buckets);
+        return buckets;
+    }
+
+    /**
+     * Opens {@code n} buckets whose write buffers share one {@code bucketBytes} budget.
+     */
+    private Bucket[] openBuckets(Path tmpDir, String prefix, int n) throws IOException {
+        int bufferSize = (int) Math.max(MIN_BUFFER_BYTES, Math.min(MAX_BUFFER_BYTES, bucketBytes / n));
+        Bucket[] buckets = new Bucket[n];
+        for (int i = 0; i < n; i++) {
+            buckets[i] = new Bucket(tmpDir.resolve(prefix + i + ".bin"), bufferSize);
+        }
+        return buckets;
+    }
+
+    private static void closeAll(Bucket[] buckets) throws IOException {
+        for (Bucket bucket : buckets) {
+            bucket.close();
+        }
+    }
+
+    /**
+     * Reads the buckets in order, sorts each by key and appends it. Up to {@code numWorkers} buckets are loaded ahead.
+     */
+    private void gather(Bucket[] buckets, RecordOutput out, ExecutorService executor) throws IOException {
+        Deque<Future<List<Map.Entry<Long, byte[]>>>> loading = new ArrayDeque<>();
+        int next = 0;
+        while (next < buckets.length || !loading.isEmpty()) {
+            while (next < buckets.length && loading.size() < numWorkers) {
+                Bucket bucket = buckets[next++];
+                loading.add(executor.submit(bucket::loadSorted));
+            }
+            for (Map.Entry<Long, byte[]> record : await(loading.poll())) {
+                out.write(record.getValue());
+            }
+        }
+    }
+
+    private interface KeyedRecordConsumer {
+        void accept(long key, byte[] record) throws IOException;
+    }
+
+    /**
+     * Temporary file of (key, length, record) entries.
+     */
+    private static class Bucket {
+        private final Path path;
+        private final DataOutputStream out;
+        private int count = 0;
+
+        Bucket(Path path, int bufferSize) throws IOException {
+            this.path = path;
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(path), bufferSize));
+        }
+
+        synchronized void write(long key, byte[] record) throws IOException {
+            out.writeLong(key);
+            out.writeInt(record.length);
+            out.write(record);
+            count++;
+        }
+
+        void close() throws IOException {
+            out.close();
+        }
+
+        void forEach(KeyedRecordConsumer consumer) throws IOException {
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path), 1 << 16))) {
+                for (int i = 0; i < count; i++) {
+                    long key = in.readLong();
+                    byte[] record = new byte[in.readInt()];
+                    in.readFully(record);
+                    consumer.accept(key, record);
+                }
+            }
+        }
+
+        void delete() throws IOException {
+            Files.delete(path);
+        }
+
+        List<Map.Entry<Long, byte[]>> loadSorted() throws IOException {
+            List<Map.Entry<Long, byte[]>> records = new ArrayList<>(count);
+            forEach((key, record) -> records.add(new AbstractMap.SimpleImmutableEntry<>(key, record)));
+            delete();
+            records.sort(Map.Entry.comparingByKey());  // 同じキーの場合は読み込み順 (安定ソート)
+            return records;
+        }
+    }
+
+    /**
+     * Writes records one after another and indexes them.
+     */
+    private static class RecordOutput implements Closeable {
+        private final OutputStream out;
+        private final GraphIndexWriter index;
+        private long offset = 0;
+        private long numRecords = 0;
+
+        RecordOutput(Path output) throws IOException {
+            this.out = new BufferedOutputStream(Files.newOutputStream(output), 1 << 16);
+            this.index = new GraphIndexWriter(output);
+        }
+
+        void write(byte[] record) throws IOException {
+            String[] header = firstLine(record).split(" ");
+            index.add(offset, Integer.parseInt(header[1]), Integer.parseInt(header[2]), header[0]);
+            out.write(record);
+            offset += record.length;
+            numRecords++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            index.close();
+            out.close();
+        }
+    }
+
+    private interface RecordConsumer {
+        void accept(byte[] record) throws IOException;
+    }
+
+    /**
+     * Reads the records of a graph file, plain or block-compressed, each including its terminating blank line.
+     */
+    private static void forEachRecord(Path input, RecordConsumer consumer) throws IOException {
+        if (isBlockCompressed(input)) {
+            try (BlockCompressedGraphReader reader = new BlockCompressedGraphReader(input)) {
+                for (int i = 0; i < reader.getNumBlocks(); i++) {
+                    try (BufferedReader br = reader.openBlock(i)) {
+                        forEachRecord(br, consumer);
+                    }
+                }
+            }
+        } else {
+            try (BufferedReader br = Files.newBufferedReader(input, StandardCharsets.UTF_8)) {
+                forEachRecord(br, consumer);
+            }
+        }
+    }
+
+    private static void forEachRecord(BufferedReader reader, RecordConsumer consumer) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            if (line.isEmpty()) {
+                if (sb.length() > 0) {
+                    consumer.accept(sb.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+                    sb.setLength(0);
+                }
+                continue;
+            }
+            sb.append(line).append('\n');
+        }
+        if (sb.length() > 0) {
+            consumer.accept(sb.append('\n').toString().getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static String firstLine(byte[] record) {
+        int end = 0;
+        while (record[end] != '\n') {
+            end++;
+        }
+        return new String(record, 0, end, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isBlockCompressed(Path path) {
+        return Files.exists(path.resolveSibling(path.getFileName() + BlockCompressedGraphWriter.INDEX_SUFFIX));
+    }
+
+    private static long uncompressedSize(Path path) throws IOException {
+        if (isBlockCompressed(path)) {
+            try (BlockCompressedGraphReader reader = new BlockCompressedGraphReader(path)) {
+                return reader.getUncompressedSize();
+            }
+        }
+        return Files.size(path);
+    }
+
+    private static List<Path> listGraphFiles(Path dataTypeDir) throws IOException {
+        Set<String> extensions = Arrays.stream(BlockCodec.values())
+                .map(c -> ".graph" + c.getExtension()).collect(Collectors.toSet());
+        extensions.add(".graph");
+        try (Stream<Path> paths = Files.walk(dataTypeDir)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(p -> extensions.stream().anyMatch(ext -> p.getFileName().toString().endsWith(ext)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static List<Path> sorted(DirectoryStream<Path> paths) {
+        List<Path> list = new ArrayList<>();
+        paths.forEach(list::add);
+        Collections.sort(list);
+        return list;
+    }
+
+    private static void awaitAll(List<Future<?>> futures) throws IOException {
+        for (Future<?> future : futures) {
+            await(future);
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while assembling");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
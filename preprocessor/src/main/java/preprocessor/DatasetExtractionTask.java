@@ -1,16 +1,23 @@
 package preprocessor;
 
-import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystem;
+import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.*;
 
 public class DatasetExtractionTask implements Runnable {
@@ -20,8 +27,21 @@ public class DatasetExtractionTask implements Runnable {
     private final int numWorkers;
     private final GraphExtractionConfig cfg;
     private final Path logDir;
+    private final Map<String, DedupIndex> dedupIndices = new ConcurrentHashMap<>();
+    private final MemoryBudget memoryBudget;
+    private final ShardPartitioner partitioner;
+    private final List<ShardManifest.Project> manifestEntries = Collections.synchronizedList(new ArrayList<>());
+    private final LongAdder extractedGraphs = new LongAdder();
+    private final LongAdder subtokenHits = new LongAdder();
+    private final LongAdder subtokenMisses = new LongAdder();
+    private ExecutorService ioExecutor;
+    private ExecutorService fileExecutor;
+    private static final Object PROJECT_FINISHED = new Object();
+    private volatile boolean failed = false;
+    private final long[] finishedCost = new long[2];  // 終了したプロジェクトの {推定コスト, 実時間 ms} の合計
 
     private static final Logger logger = Logger.getLogger(DatasetExtractionTask.class.getName());
+    private static final RateLimitedLogger warnings = new RateLimitedLogger(logger, 20, 10_000);
 
     public DatasetExtractionTask(Path targetDir, Path outputDir, int numWorkers, GraphExtractionConfig cfg, Path logDir) {
         this.targetDir = targetDir;
@@ -29,15 +49,28 @@ public class DatasetExtractionTask implements Runnable {
         this.numWorkers = numWorkers;
         this.cfg = cfg;
         this.logDir = logDir;
+        this.memoryBudget = cfg.newMemoryBudget();
+        this.partitioner = new ShardPartitioner(cfg.shardIndex, cfg.shardCount);
 
         logger.setLevel(Level.INFO);
         try {
             if (!logDir.toFile().exists()) {
                 logDir.toFile().mkdirs();
             }
-            Handler handler = new FileHandler(logDir.resolve("preprocess.log").toString());
-            handler.setFormatter(new LogFormatter());
-            logger.addHandler(handler);
+            String logName = partitioner.isSharded()
+                    ? "preprocess-" + partitioner.getShardIndex() + "-of-" + partitioner.getShardCount() + ".log"
+                    : "preprocess.log";
+            Path logFile = logDir.resolve(logName).toAbsolutePath();
+            AsyncLogHandler.install(logger, logFile.toString(), () -> {
+                Handler handler = new FileHandler(logFile.toString());
+                handler.setFormatter(new LogFormatter());
+                return handler;
+            });
+            AsyncLogHandler.install(logger, "stderr", () -> {
+                Handler handler = new ConsoleHandler();
+                handler.setFormatter(new LogFormatter());
+                return handler;
+            });
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
@@ -45,48 +78,425 @@ public class DatasetExtractionTask implements Runnable {
 
     @Override
     public void run() {
-        ExecutorService executor = Executors.newFixedThreadPool(numWorkers);
+        int min = Math.max(1, cfg.minWorkers);
+        int max = Math.max(min, cfg.maxWorkers);
+        int initial = cfg.adaptiveWorkers ? Math.max(min, Math.min(max, numWorkers)) : numWorkers;
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(initial, initial, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>());
+        ioExecutor = cfg.newIoExecutor();
+        fileExecutor = cfg.newFileExecutor();
+        WorkerController controller = null;
+        if (cfg.adaptiveWorkers) {
+            // 並列度はプロジェクト単位なので、減らした分は実行中のプロジェクトが終わってから反映される
+            controller = new WorkerController(executor, min, max, extractedGraphs, logger);
+            controller.start(cfg.adaptiveIntervalMs);
+            logger.info("adapting the number of workers between " + min + " and " + max + ", starting from " + initial);
+        }
+        if (memoryBudget.isLimited()) {
+            logger.info("admitting files within a memory budget of " + memoryBudget.getAvailableBytes() / (1024 * 1024) + " MiB");
+        }
+        if (partitioner.isSharded()) {
+            logger.info("extracting shard " + partitioner.getShardIndex() + " of " + partitioner.getShardCount());
+            if (cfg.dedupFiles || cfg.dedupMethods) {
+                logger.warning("duplicates are only removed within each shard");
+            }
+        }
         try {
             List<Future<?>> futures = new ArrayList<>();
-            for (Map.Entry<String, List<File>> en : listProjects().entrySet()) {
-                String dataType = en.getKey();
-                for (File project : en.getValue()) {
-                    Path outPath = outputDir.resolve(dataType).resolve(project.getName());
-                    if (!outPath.toFile().exists()) {
-                        outPath.toFile().mkdirs();
-                    }
-                    Future<?> future = executor.submit(new ProjectExtractionTask(project, outPath, cfg, logger));
-                    futures.add(future);
-                }
-            }
-            for (Future<?> future : futures) {
-                try {
-                    future.get();
-                } catch (Exception e) {
-                    logger.log(Level.SEVERE, e.getMessage(), e);
+            if (Archives.isTar(targetDir)) {
+                submitTarProjects(executor, futures);
+            } else if (Archives.isZip(targetDir)) {
+                try (FileSystem zipFs = Archives.openZip(targetDir)) {
+                    submitProjects(Archives.zipRoot(zipFs, cfg.archiveRoot), executor, futures);
+                    awaitAll(futures);
                 }
+            } else {
+                submitProjects(targetDir, executor, futures);
             }
+            awaitAll(futures);
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "failed to read dataset: " + targetDir, e);
+            failed = true;
         } finally {
+            if (controller != null) {
+                controller.close();
+            }
             executor.shutdown();
+            if (ioExecutor != null) {
+                ioExecutor.shutdown();
+            }
+            if (fileExecutor != null) {
+                fileExecutor.shutdown();
+            }
+        }
+        if (cfg.dedupFiles || cfg.dedupMethods) {
+            long files = dedupIndices.values().stream().distinct().mapToLong(DedupIndex::getSkippedFiles).sum();
+            long methods = dedupIndices.values().stream().distinct().mapToLong(DedupIndex::getSkippedGraphs).sum();
+            logger.info("skipped " + files + " duplicate files and " + methods + " duplicate methods in total");
+        }
+        logger.info(SubtokenCache.stats(subtokenHits.sum(), subtokenMisses.sum()));
+        if (cfg.reorderVertices) {
+            logger.info(VertexOrdering.stats());
+        }
+        if (cfg.adaptiveWorkers) {
+            logger.info("extracted " + extractedGraphs.sum() + " methods, finishing with " + executor.getMaximumPoolSize() + " workers");
+        }
+        writeManifest();
+        warnings.reportSuppressed();
+        long incomplete = manifestEntries.stream().filter(p -> !p.complete).count();
+        if (incomplete > 0) {
+            logger.severe(incomplete + " of " + manifestEntries.size() + " projects failed");
+            failed = true;
         }
         logger.info("complete preprocessing all projects");
     }
 
-    private Map<String, List<File>> listProjects() {
-        Map<String, List<File>> result = new HashMap<>();
-        for (File dataTypeLevel : targetDir.toFile().listFiles()) {
-            if (!dataTypeLevel.isDirectory()) {
-                continue;
+    /**
+     * Whether the dataset could not be read, a project failed as a whole, or the manifest could not be written.
+     * Files that fail to parse do not count.
+     */
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    private void submitProjects(Path root, ThreadPoolExecutor executor, List<Future<?>> futures) throws IOException {
+        List<PendingProject> projects = sampleProjects(listProjects(root));
+        if (partitioner.isSharded()) {
+            // 全ての shard が同じ割り当てになるよう、分割の前に全プロジェクトのコストを求める
+            estimateAll(projects, executor);
+            projects = selectShard(projects);
+        }
+        if (cfg.dedupCrossSplit == DedupIndex.CrossSplitPolicy.KEEP_TRAINING) {
+            // training を先に全て処理し終えてから他の data type を処理することで、training 側のコピーが残るようにする
+            List<PendingProject> training = new ArrayList<>();
+            List<PendingProject> others = new ArrayList<>();
+            for (PendingProject project : projects) {
+                (project.dataType.equals(DedupIndex.TRAINING) ? training : others).add(project);
+            }
+            dispatch(training, executor, futures);
+            awaitAll(futures);
+            projects = others;
+        }
+        dispatch(projects, executor, futures);
+    }
+
+    private List<PendingProject> sampleProjects(Map<String, List<Path>> projects) {
+        List<PendingProject> result = new ArrayList<>();
+        for (Map.Entry<String, List<Path>> en : projects.entrySet()) {
+            for (Path project : en.getValue()) {
+                ProjectSource source = new DirectoryProjectSource(project, fileName(project));
+                Sampler sampler = cfg.newSampler(en.getKey()).forProject(source.getName());
+                if (sampler.acceptProject()) {
+                    result.add(new PendingProject(en.getKey(), source, sampler));
+                }
             }
-            for (File projectLevel : dataTypeLevel.listFiles()) {
-                if (!projectLevel.isDirectory()) {
+        }
+        result.sort(Comparator.comparing(PendingProject::key));
+        return result;
+    }
+
+    /**
+     * Estimates the cost of every project on the workers and waits for all of them.
+     */
+    private void estimateAll(List<PendingProject> projects, ExecutorService executor) throws IOException {
+        long start = System.currentTimeMillis();
+        List<Future<?>> estimates = new ArrayList<>();
+        for (PendingProject project : projects) {
+            estimates.add(executor.submit(() -> estimate(project)));
+        }
+        awaitAll(estimates);
+        logger.info("estimated the cost of " + projects.size() + " projects in " + (System.currentTimeMillis() - start) + " ms");
+    }
+
+    /**
+     * Sets the cost of a project from its file sizes; a project that cannot be listed gets no cost, and fails
+     * with its own error when it is extracted.
+     */
+    private void estimate(PendingProject project) {
+        try {
+            project.cost = ProjectCost.estimate(project.source, ioExecutor);
+        } catch (IOException | UncheckedIOException e) {
+            warnings.warning("failed to estimate the cost of project", project.source);
+            project.cost = new ProjectCost(0, 0);
+        }
+    }
+
+    /**
+     * Submits the projects largest first (LPT), so that no single large project is left running alone at the end.
+     * Costs not known yet are estimated on the workers, at most two projects per worker ahead of submission, so
+     * that extraction starts without a pre-pass over the whole dataset. Once the first batch of estimates is in,
+     * the largest project estimated so far is submitted whenever a worker is free, and another estimate is
+     * started for each project submitted.
+     */
+    private void dispatch(List<PendingProject> projects, ThreadPoolExecutor executor, List<Future<?>> futures)
+            throws IOException {
+        BlockingQueue<Object> events = new LinkedBlockingQueue<>();
+        Deque<PendingProject> unestimated = new ArrayDeque<>();
+        PriorityQueue<PendingProject> ready = new PriorityQueue<>(
+                Comparator.comparingLong((PendingProject p) -> p.cost.get()).reversed()
+                        .thenComparing(PendingProject::key));
+        for (PendingProject project : projects) {
+            (project.cost == null ? unestimated : ready).add(project);
+        }
+        int toEstimate = unestimated.size();
+        int estimating = 0;
+        int running = 0;
+        boolean started = false;
+        try {
+            while (true) {
+                int workers = executor.getMaximumPoolSize();
+                // 投入待ちと見積もり中を合わせて worker 数の2倍までに抑え、全体の見積もりを先に済ませない
+                while (!unestimated.isEmpty() && ready.size() + estimating < 2 * workers) {
+                    PendingProject project = unestimated.poll();
+                    executor.execute(() -> {
+                        estimate(project);
+                        events.add(project);
+                    });
+                    estimating++;
+                }
+                // 最初の見積もりが揃うまでは、それより小さいプロジェクトを先に投入しないよう待つ
+                if (!started && estimating == 0) {
+                    started = true;
+                    if (toEstimate > 0) {
+                        logger.info("starting extraction with " + (toEstimate - unestimated.size()) + " of "
+                                + toEstimate + " project costs estimated");
+                    }
+                }
+                if (started) {
+                    while (!ready.isEmpty() && running < workers) {
+                        Runnable task = newProjectTask(ready.poll());
+                        futures.add(executor.submit(() -> {
+                            try {
+                                task.run();
+                            } finally {
+                                events.add(PROJECT_FINISHED);
+                            }
+                        }));
+                        running++;
+                    }
+                }
+                if (unestimated.isEmpty() && estimating == 0 && ready.isEmpty()) {
+                    return;
+                }
+                if (started && !unestimated.isEmpty() && ready.size() + estimating < 2 * workers) {
+                    continue;  // 投入した分の見積もりをすぐに始める
+                }
+                Object event = events.take();
+                if (event == PROJECT_FINISHED) {
+                    running--;
+                } else {
+                    estimating--;
+                    ready.add((PendingProject) event);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("interrupted while submitting projects");
+        }
+    }
+
+    /**
+     * Keeps the projects of this shard. Every shard lists and sizes the whole dataset, so all of them agree on
+     * the assignment; the size estimate is the cost the projects are scheduled by.
+     */
+    private List<PendingProject> selectShard(List<PendingProject> projects) {
+        List<PendingProject> selected = new ArrayList<>(
+                partitioner.select(projects, PendingProject::key, p -> p.cost.get()));
+        long bytes = selected.stream().mapToLong(p -> p.cost.getBytes()).sum();
+        long total = projects.stream().mapToLong(p -> p.cost.getBytes()).sum();
+        logger.info("selected " + selected.size() + " of " + projects.size() + " projects ("
+                + bytes / 1024 + " of " + total / 1024 + " KiB)");
+        return selected;
+    }
+
+    private Runnable newProjectTask(PendingProject project) {
+        return newProjectTask(project.dataType, project.source, project.sampler, project.cost);
+    }
+
+    private Runnable newProjectTask(String dataType, ProjectSource source, Sampler sampler, ProjectCost cost) {
+        DedupIndex dedup = dedupIndices.computeIfAbsent(
+                cfg.dedupCrossSplit == DedupIndex.CrossSplitPolicy.KEEP_TRAINING ? "" : dataType,
+                k -> new DedupIndex());
+        ProjectExtractionTask task = new ProjectExtractionTask(source, prepareOutPath(dataType, source.getName()), cfg,
+                new ExtractionContext(warnings, dedup, memoryBudget, sampler, extractedGraphs, ioExecutor, fileExecutor));
+        return () -> {
+            long start = System.currentTimeMillis();
+            try {
+                task.run();
+            } finally {
+                manifestEntries.add(task.toManifestEntry(dataType));
+                SubtokenCache subtokens = task.getSubtokenCache();
+                if (subtokens != null) {
+                    subtokenHits.add(subtokens.getHits());
+                    subtokenMisses.add(subtokens.getMisses());
+                }
+                logProjectTime(dataType + "/" + source.getName(), cost, System.currentTimeMillis() - start);
+            }
+        };
+    }
+
+    /**
+     * Logs the actual time of a project next to the time its cost predicts, at the rate observed over the
+     * projects finished before it.
+     */
+    private void logProjectTime(String key, ProjectCost cost, long millis) {
+        String estimated;
+        synchronized (finishedCost) {
+            estimated = finishedCost[0] > 0 ? (long) ((double) cost.get() * finishedCost[1] / finishedCost[0]) + " ms" : "-";
+            finishedCost[0] += cost.get();
+            finishedCost[1] += millis;
+        }
+        logger.info(key + " (" + cost + "): estimated " + estimated + ", actual " + millis + " ms");
+    }
+
+    private static String fileName(Path path) {
+        return path.getFileName().toString().replace("/", "");  // zip file system のディレクトリ名は '/' で終わる
+    }
+
+    /**
+     * Streams a tar archive laid out as {@code <dataType>/<project>/**}. The reader thread keeps decompressing
+     * while the workers parse the projects that have already been read; projects are expected to be contiguous.
+     */
+    private void submitTarProjects(ExecutorService executor, List<Future<?>> futures) throws IOException {
+        int maxWorkers = cfg.adaptiveWorkers ? Math.max(numWorkers, cfg.maxWorkers) : numWorkers;
+        Semaphore inFlight = new Semaphore(maxWorkers + 1);  // 展開済みでメモリ上に置くプロジェクト数の上限
+        Map<String, Integer> submitted = new HashMap<>();
+        if (cfg.dedupCrossSplit == DedupIndex.CrossSplitPolicy.KEEP_TRAINING) {
+            logger.warning("tar archives are extracted in archive order; training copies are only kept if training comes first");
+        }
+        String currentKey = null;
+        String currentProject = null;
+        Sampler currentSampler = null;
+        boolean currentInShard = false;
+        List<SourceFile> currentFiles = new ArrayList<>();
+        try (TarArchiveReader reader = new TarArchiveReader(targetDir)) {
+            TarArchiveReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                String name = Archives.relativize(entry.getName(), cfg.archiveRoot);
+                if (!entry.isFile() || name == null || !name.endsWith(".java")) {
+                    continue;
+                }
+                String[] parts = name.split("/", 3);
+                if (parts.length < 3) {
+                    continue;
+                }
+                String key = parts[0] + "/" + parts[1];
+                if (!key.equals(currentKey)) {
+                    submitTarProject(currentProject, currentFiles, currentSampler, inFlight, executor, futures);
+                    currentKey = key;
+                    currentProject = key;
+                    currentSampler = cfg.newSampler(parts[0]).forProject(parts[1]);
+                    currentInShard = partitioner.accept(key);  // 先に一覧を作れないので、tar ではハッシュだけで分割する
+                    currentFiles = new ArrayList<>();
+                    int seen = submitted.merge(key, 1, Integer::sum);
+                    if (seen > 1) {
+                        // 同じ出力先を上書きしないよう、後から現れた部分は別プロジェクトとして扱う
+                        currentProject = key + "." + seen;
+                        logger.warning("project is not contiguous in the archive, extracting the rest as: " + currentProject);
+                    }
+                }
+                if (!currentInShard || !currentSampler.acceptProject() || !currentSampler.acceptFile(parts[2])) {
+                    continue;  // 展開はするが、メモリには読み込まない
+                }
+                currentFiles.add(new SourceFile(Paths.get(name), parts[2], reader.readContent()));
+            }
+            submitTarProject(currentProject, currentFiles, currentSampler, inFlight, executor, futures);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void submitTarProject(String key, List<SourceFile> files, Sampler sampler, Semaphore inFlight,
+                                  ExecutorService executor, List<Future<?>> futures) throws IOException, InterruptedException {
+        if (key == null || files.isEmpty()) {
+            return;
+        }
+        String dataType = key.substring(0, key.indexOf('/'));
+        String projectName = key.substring(key.indexOf('/') + 1);
+        ProjectSource source = new InMemoryProjectSource(projectName, targetDir + "!/" + key, files);
+        Runnable task = newProjectTask(dataType, source, sampler, ProjectCost.estimate(source));
+        inFlight.acquire();
+        futures.add(executor.submit(() -> {
+            try {
+                task.run();
+            } finally {
+                inFlight.release();
+            }
+        }));
+    }
+
+    private void writeManifest() {
+        ShardManifest manifest = new ShardManifest();
+        manifest.dataset = targetDir.toString();
+        manifest.shardIndex = partitioner.getShardIndex();
+        manifest.shardCount = partitioner.getShardCount();
+        manifest.projects.addAll(manifestEntries);
+        manifest.projects.sort(Comparator.comparing(ShardManifest.Project::key));
+        try {
+            outputDir.toFile().mkdirs();
+            manifest.write(outputDir.resolve(partitioner.getManifestName()));
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "failed to write manifest to " + outputDir, e);
+            failed = true;
+        }
+    }
+
+    private Path prepareOutPath(String dataType, String projectName) {
+        Path outPath = outputDir.resolve(dataType).resolve(projectName);
+        if (!outPath.toFile().exists()) {
+            outPath.toFile().mkdirs();
+        }
+        return outPath;
+    }
+
+    private void awaitAll(List<Future<?>> futures) {
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (Exception e) {
+                logger.log(Level.SEVERE, e.getMessage(), e);
+                failed = true;
+            }
+        }
+        futures.clear();
+    }
+
+    private Map<String, List<Path>> listProjects(Path root) throws IOException {
+        Map<String, List<Path>> result = new HashMap<>();
+        try (DirectoryStream<Path> dataTypeLevels = Files.newDirectoryStream(root)) {
+            for (Path dataTypeLevel : dataTypeLevels) {
+                if (!Files.isDirectory(dataTypeLevel)) {
                     continue;
                 }
-                String dataType = dataTypeLevel.toPath().getFileName().toString();
-                result.computeIfAbsent(dataType, k -> new ArrayList<>());
-                result.get(dataType).add(projectLevel);
+                try (DirectoryStream<Path> projectLevels = Files.newDirectoryStream(dataTypeLevel)) {
+                    for (Path projectLevel : projectLevels) {
+                        if (!Files.isDirectory(projectLevel)) {
+                            continue;
+                        }
+                        String dataType = fileName(dataTypeLevel);
+                        result.computeIfAbsent(dataType, k -> new ArrayList<>());
+                        result.get(dataType).add(projectLevel);
+                    }
+                }
             }
         }
         return result;
     }
+
+    private static class PendingProject {
+        final String dataType;
+        final ProjectSource source;
+        final Sampler sampler;
+        ProjectCost cost;  // 見積もるまでは null
+
+        PendingProject(String dataType, ProjectSource source, Sampler sampler) {
+            this.dataType = dataType;
+            this.source = source;
+            this.sampler = sampler;
+        }
+
+        String key() {
+            return dataType + "/" + source.getName();
+        }
+    }
 }
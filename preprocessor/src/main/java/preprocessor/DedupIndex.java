@@ -0,0 +1,122 @@
+package preprocessor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Content-hash index shared by the extraction workers, used to drop byte-identical files before parsing
+ * and graphs with identical method names, labels and edges after conversion.
+ */
+public class DedupIndex {
+
+    public enum CrossSplitPolicy {
+        /** duplicates are only removed within each data type */
+        NONE,
+        /** one index for all data types; training is extracted first so its copy is the one kept */
+        KEEP_TRAINING
+    }
+
+    public static final String TRAINING = "training";
+
+    private static final ThreadLocal<MessageDigest> sha256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private final Set<Digest> files = ConcurrentHashMap.newKeySet();
+    private final Set<Digest> graphs = ConcurrentHashMap.newKeySet();
+    private final LongAdder skippedFiles = new LongAdder();
+    private final LongAdder skippedGraphs = new LongAdder();
+
+    /**
+     * Returns true if no file with the same content has been seen before.
+     */
+    public boolean addFile(byte[] content) {
+        MessageDigest md = sha256.get();
+        md.reset();
+        boolean added = files.add(new Digest(md.digest(content)));
+        if (!added) {
+            skippedFiles.increment();
+        }
+        return added;
+    }
+
+    /**
+     * Returns true if no graph with the same method name, vertex labels and edges has been seen before. The name
+     * is not a vertex of the graph, so methods with the same body but different names are both kept.
+     */
+    public boolean addGraph(Graph graph) {
+        boolean added = graphs.add(new Digest(canonicalHash(graph)));
+        if (!added) {
+            skippedGraphs.increment();
+        }
+        return added;
+    }
+
+    public long getSkippedFiles() {
+        return skippedFiles.sum();
+    }
+
+    public long getSkippedGraphs() {
+        return skippedGraphs.sum();
+    }
+
+    static byte[] canonicalHash(Graph graph) {
+        MessageDigest md = sha256.get();
+        md.reset();
+        md.update(graph.getMethodName().getBytes(StandardCharsets.UTF_8));
+        md.update((byte) '\n');
+        for (Graph.Vertex vertex : graph.getVertices()) {
+            md.update(vertex.getLabel().getBytes(StandardCharsets.UTF_8));
+            md.update((byte) ' ');
+        }
+        // 辺の並びには依らず、辺の集合として hash を取るため (src, dst, type) 順に並べる
+        int[][] edges = new int[graph.getEdges().size()][];
+        for (int i = 0; i < edges.length; i++) {
+            Graph.Edge edge = graph.getEdges().get(i);
+            edges[i] = new int[]{edge.getSrc().getIndex(), edge.getDst().getIndex(), edge.getType().value};
+        }
+        Arrays.sort(edges, Comparator.<int[]>comparingInt(e -> e[0]).thenComparingInt(e -> e[1]).thenComparingInt(e -> e[2]));
+        ByteBuffer buf = ByteBuffer.allocate(12);
+        for (int[] edge : edges) {
+            buf.clear();
+            buf.putInt(edge[0]).putInt(edge[1]).putInt(edge[2]);
+            md.update(buf.array());
+        }
+        return md.digest();
+    }
+
+    private static final class Digest {
+        private final long hi;
+        private final long lo;
+
+        Digest(byte[] digest) {
+            ByteBuffer buf = ByteBuffer.wrap(digest);
+            this.hi = buf.getLong();
+            this.lo = buf.getLong();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Digest digest = (Digest) o;
+            return hi == digest.hi && lo == digest.lo;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(hi);
+        }
+    }
+}
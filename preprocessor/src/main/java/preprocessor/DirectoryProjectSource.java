@@ -0,0 +1,66 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+public class DirectoryProjectSource implements ProjectSource {
+
+    private final Path root;
+    private final String name;
+
+    public DirectoryProjectSource(Path root) {
+        this(root, root.getFileName().toString());
+    }
+
+    public DirectoryProjectSource(Path root, String name) {
+        this.root = root;
+        this.name = name;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Path getRoot() {
+        return root;
+    }
+
+    @Override
+    public Stream<SourceFile> files() throws IOException {
+        return Files.walk(root)
+                .filter(path -> path.toString().endsWith(".java"))
+                .filter(Files::isRegularFile)
+                .sorted()
+                .map(this::toSourceFile);
+    }
+
+    /**
+     * Lists the files with a {@link ParallelFileCrawler} on {@code ioExecutor}, in the same order as {@link #files()}.
+     */
+    @Override
+    public Stream<SourceFile> files(Executor ioExecutor) throws IOException {
+        if (ioExecutor == null) {
+            return files();
+        }
+        return ParallelFileCrawler.crawl(root, ioExecutor, path -> path.toString().endsWith(".java")).stream()
+                .map(this::toSourceFile);
+    }
+
+    private SourceFile toSourceFile(Path path) {
+        return new SourceFile(path, root.relativize(path).toString().replace('\\', '/'));
+    }
+
+    @Override
+    public String toString() {
+        if (root.getFileSystem() == FileSystems.getDefault()) {
+            return root.toString();
+        }
+        return root.toUri().toString();  // jar:file:///path/to/archive.zip!/training/project
+    }
+}
@@ -0,0 +1,27 @@
+package preprocessor;
+
+import com.github.javaparser.ast.Node;
+
+import static preprocessor.Graph.Vertex;
+
+/**
+ * Adds one kind of edges to the graph of a method. {@link MethodToGraphConverter} walks the AST once and calls every
+ * enabled producer on each vertex it creates, so another edge kind does not add another pass over the method.
+ * A producer is created for each method and may keep per-method state.
+ */
+public interface EdgeProducer {
+
+    /**
+     * Called for each AST vertex in traversal order, right after the vertex has been created.
+     * {@code parent} is null for the method itself.
+     */
+    default void visit(GraphBuilder graph, Node node, Vertex vertex, Vertex parent) {
+    }
+
+    /**
+     * Called once after the traversal, in the order the producers were registered.
+     * Vertices that are not part of the AST are added here.
+     */
+    default void finish(GraphBuilder graph) {
+    }
+}
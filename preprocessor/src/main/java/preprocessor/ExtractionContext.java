@@ -0,0 +1,78 @@
+package preprocessor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * State shared between the project tasks of one extraction run, plus the project's own sampler.
+ */
+public class ExtractionContext {
+
+    private final RateLimitedLogger warnings;
+    private final DedupIndex dedup;
+    private final MemoryBudget memoryBudget;
+    private final Sampler sampler;
+    private final LongAdder extractedGraphs;
+    private final Executor ioExecutor;
+    private final Executor fileExecutor;
+
+    public ExtractionContext(RateLimitedLogger warnings, DedupIndex dedup, MemoryBudget memoryBudget, Sampler sampler,
+                             LongAdder extractedGraphs, Executor ioExecutor, Executor fileExecutor) {
+        this.warnings = warnings;
+        this.dedup = dedup;
+        this.memoryBudget = memoryBudget;
+        this.sampler = sampler;
+        this.extractedGraphs = extractedGraphs;
+        this.ioExecutor = ioExecutor;
+        this.fileExecutor = fileExecutor;
+    }
+
+    public Logger getLogger() {
+        return warnings.getLogger();
+    }
+
+    /**
+     * Rate-limited warnings about single files, shared by all projects of the run.
+     */
+    public RateLimitedLogger getWarnings() {
+        return warnings;
+    }
+
+    public DedupIndex getDedup() {
+        return dedup;
+    }
+
+    public MemoryBudget getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * The sampler scoped to the project the context was created for.
+     */
+    public Sampler getSampler() {
+        return sampler;
+    }
+
+    /**
+     * Number of graphs written by all projects of the run so far.
+     */
+    public LongAdder getExtractedGraphs() {
+        return extractedGraphs;
+    }
+
+    /**
+     * Threads shared by all projects for listing directories and reading files ahead, or null to do both on the
+     * worker itself.
+     */
+    public Executor getIoExecutor() {
+        return ioExecutor;
+    }
+
+    /**
+     * Threads shared by all projects for converting files in parallel, or null to convert them on the worker.
+     */
+    public Executor getFileExecutor() {
+        return fileExecutor;
+    }
+}
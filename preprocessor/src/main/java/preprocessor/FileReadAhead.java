@@ -0,0 +1,98 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Loads the contents of the files of a stream on I/O threads ahead of the thread consuming it, so that the parser
+ * finds the source already in memory. At most {@code maxFiles} files are read ahead, and no more are started while
+ * the loaded but not yet consumed ones hold {@code maxBytes} or more. The files come out in the order they went in;
+ * a file that could not be read comes out unloaded, so that reading it again reports the error where it is used.
+ */
+public class FileReadAhead implements Iterator<SourceFile> {
+
+    private final Iterator<SourceFile> files;
+    private final Executor executor;
+    private final int maxFiles;
+    private final long maxBytes;
+    private final Deque<CompletableFuture<SourceFile>> window = new ArrayDeque<>();
+    private final AtomicLong loadedBytes = new AtomicLong();
+
+    private FileReadAhead(Iterator<SourceFile> files, Executor executor, int maxFiles, long maxBytes) {
+        this.files = files;
+        this.executor = executor;
+        this.maxFiles = maxFiles;
+        this.maxBytes = maxBytes;
+    }
+
+    public static Stream<SourceFile> readAhead(Stream<SourceFile> files, Executor executor, int maxFiles, long maxBytes) {
+        FileReadAhead readAhead = new FileReadAhead(files.iterator(), executor, Math.max(1, maxFiles), maxBytes);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(readAhead, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(readAhead::cancel)
+                .onClose(files::close);
+    }
+
+    private void fill() {
+        // 大きさを調べるための stat もしないよう、読み終えた分のバイト数だけで制限する
+        while (files.hasNext() && window.size() < maxFiles && (window.isEmpty() || loadedBytes.get() < maxBytes)) {
+            SourceFile file = files.next();
+            if (file.isLoaded()) {
+                loadedBytes.addAndGet(file.getLoadedSize());
+                window.add(CompletableFuture.completedFuture(file));
+                continue;
+            }
+            window.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    byte[] content = file.getContent();
+                    loadedBytes.addAndGet(content.length);
+                    return file.withContent(content);
+                } catch (IOException | UncheckedIOException e) {
+                    return file;
+                }
+            }, executor));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        fill();
+        return !window.isEmpty();
+    }
+
+    @Override
+    public SourceFile next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        SourceFile file;
+        try {
+            file = window.poll().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+        if (file.isLoaded()) {
+            loadedBytes.addAndGet(-file.getLoadedSize());
+        }
+        fill();
+        return file;
+    }
+
+    private void cancel() {
+        for (CompletableFuture<SourceFile> future : window) {
+            future.cancel(false);
+        }
+        window.clear();
+    }
+}
@@ -99,7 +99,8 @@ public class Graph {
 
     public enum VertexType {
         SYNTAX_NODE,
-        SYNTAX_TOKEN;
+        SYNTAX_TOKEN,
+        TYPE;
     }
 
     public static class Edge {
@@ -145,7 +146,8 @@ public class Graph {
         NEXT_TOKEN(2),
         LAST_USE(3),
         LAST_WRITE(4),
-        COMPUTED_FROM(5);
+        COMPUTED_FROM(5),
+        HAS_TYPE(6);
 
         int value;
 
@@ -0,0 +1,70 @@
+package preprocessor;
+
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static preprocessor.Graph.Edge;
+import static preprocessor.Graph.EdgeType;
+import static preprocessor.Graph.Vertex;
+import static preprocessor.Graph.VertexType;
+
+/**
+ * Vertices and edges of a method under construction, shared by the {@link EdgeProducer}s. The vertex of each AST
+ * node is kept in a side table rather than in the node's data, so the AST is only read and several methods of one
+ * compilation unit can be converted at the same time.
+ */
+public class GraphBuilder {
+
+    private final MethodDeclaration method;
+    private final List<Vertex> vertices = new ArrayList<>();
+    private final List<Edge> edges = new ArrayList<>();
+    private final Map<Node, Vertex> nodeVertices = new IdentityHashMap<>();  // Node#equals は構造の比較なので identity で引く
+
+    public GraphBuilder(MethodDeclaration method) {
+        this.method = method;
+    }
+
+    public MethodDeclaration getMethod() {
+        return method;
+    }
+
+    public Vertex addVertex(String label, Range range, VertexType type) {
+        Vertex vertex = new Vertex(vertices.size(), label, range, type);
+        vertices.add(vertex);
+        return vertex;
+    }
+
+    /**
+     * Adds the vertex of an AST node, which {@link #getVertex(Node)} returns from then on.
+     */
+    public Vertex addVertex(Node node, String label, Range range, VertexType type) {
+        Vertex vertex = addVertex(label, range, type);
+        nodeVertices.put(node, vertex);
+        return vertex;
+    }
+
+    /**
+     * Returns the vertex of an AST node of the method, or null if the node has none.
+     */
+    public Vertex getVertex(Node node) {
+        return nodeVertices.get(node);
+    }
+
+    public void addEdge(Vertex src, Vertex dst, EdgeType type) {
+        edges.add(new Edge(src, dst, type));
+    }
+
+    public List<Vertex> getVertices() {
+        return vertices;
+    }
+
+    public List<Edge> getEdges() {
+        return edges;
+    }
+}
@@ -1,13 +1,131 @@
 package preprocessor;
 
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class GraphExtractionConfig {
     public int maxVertices;
+    public boolean childEdges;
+    public boolean nextTokenEdges;
+    public boolean dataFlowEdges;
     public boolean excludeBoilerplates;
     public boolean outputInPackage;
+    public boolean resolveTypes;
+    public long typeResolutionBudgetMs;
+    public Map<String, Double> sampleRates;
+    public Sampler.Level sampleLevel;
+    public long sampleSeed;
+    public int sampleMaxMethodsPerProject;
+    public BlockCodec compress;
+    public int compressBlockSize;
+    public int packCapacity;
+    public int packWindow;
+    public Vocabulary npyWordVocab;
+    public Vocabulary npyTargetVocab;
+    public int npyShardSize;
+    public int maxWordParts;
+    public String archiveRoot;
+    public int subtokenCacheSize;
+    public boolean dedupFiles;
+    public boolean dedupMethods;
+    public DedupIndex.CrossSplitPolicy dedupCrossSplit;
+    public int shardIndex;
+    public int shardCount;
+    public long memoryBudgetMb;
+    public double memoryPerSourceByte;
+    public MemoryBudget.OversizedPolicy oversizedFiles;
+    public int ioThreads;
+    public long readAheadBytes;
+    public boolean reorderVertices;
+    public int parallelMethods;
+    public int fileWorkers;
+    public boolean adaptiveWorkers;
+    public int minWorkers;
+    public int maxWorkers;
+    public long adaptiveIntervalMs;
 
     public GraphExtractionConfig(CommandLineValues opt) {
         this.maxVertices = opt.maxVertices;
+        this.childEdges = !opt.noChildEdges;
+        this.nextTokenEdges = !opt.noNextTokenEdges;
+        this.dataFlowEdges = !opt.noDataFlowEdges;
         this.excludeBoilerplates = opt.excludeBoilerplates;
         this.outputInPackage = opt.outputInPackage;
+        this.resolveTypes = opt.resolveTypes;
+        this.typeResolutionBudgetMs = opt.typeResolutionBudgetMs;
+        this.sampleRates = Sampler.parseRates(opt.sampleRate);
+        this.sampleLevel = opt.sampleLevel;
+        this.sampleSeed = opt.sampleSeed;
+        this.sampleMaxMethodsPerProject = opt.sampleMaxMethodsPerProject;
+        this.compress = opt.compress;
+        this.compressBlockSize = opt.compressBlockSize;
+        this.packCapacity = opt.packCapacity;
+        this.packWindow = opt.packWindow;
+        if (opt.npyWordVocab != null) {
+            this.npyWordVocab = Vocabulary.load(opt.npyWordVocab);
+            this.npyTargetVocab = Vocabulary.load(opt.npyTargetVocab);
+        }
+        this.npyShardSize = opt.npyShardSize;
+        this.maxWordParts = opt.maxWordParts;
+        this.archiveRoot = opt.archiveRoot;
+        this.dedupFiles = opt.dedupFiles;
+        this.dedupMethods = opt.dedupMethods;
+        this.dedupCrossSplit = opt.dedupCrossSplit;
+        this.shardIndex = opt.shardIndex;
+        this.shardCount = opt.shardCount;
+        this.memoryBudgetMb = opt.memoryBudgetMb;
+        this.memoryPerSourceByte = opt.memoryPerSourceByte;
+        this.oversizedFiles = opt.oversizedFiles;
+        this.ioThreads = opt.ioThreads;
+        this.readAheadBytes = (long) opt.readAheadMb * 1024 * 1024;
+        this.reorderVertices = opt.reorderVertices;
+        this.parallelMethods = opt.parallelMethods;
+        this.subtokenCacheSize = opt.subtokenCacheSize;
+        this.fileWorkers = opt.fileWorkers;
+        this.adaptiveWorkers = opt.adaptiveWorkers;
+        this.minWorkers = opt.minWorkers;
+        this.maxWorkers = opt.maxWorkers;
+        this.adaptiveIntervalMs = opt.adaptiveIntervalMs;
+    }
+
+    public Sampler newSampler(String dataType) {
+        double rate = sampleRates.getOrDefault(dataType, sampleRates.get(""));
+        return new Sampler(rate, sampleLevel, sampleSeed, sampleMaxMethodsPerProject, dataType + "/");
+    }
+
+    /**
+     * Daemon threads for {@link ParallelFileCrawler} and {@link FileReadAhead}, or null if {@code ioThreads} is 0.
+     */
+    public ExecutorService newIoExecutor() {
+        if (ioThreads <= 0) {
+            return null;
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(ioThreads, r -> {
+            Thread t = new Thread(r, "io-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Threads converting files for {@link ReorderBuffer}, or null if {@code fileWorkers} is 0 or types are resolved.
+     */
+    public ExecutorService newFileExecutor() {
+        if (fileWorkers <= 0 || resolveTypes) {
+            return null;
+        }
+        AtomicInteger count = new AtomicInteger();
+        return Executors.newFixedThreadPool(fileWorkers, r -> {
+            Thread t = new Thread(r, "file-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public MemoryBudget newMemoryBudget() {
+        return new MemoryBudget(memoryBudgetMb * 1024 * 1024, memoryPerSourceByte, oversizedFiles);
     }
 }
@@ -0,0 +1,176 @@
+package preprocessor;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParseProblemException;
+import com.github.javaparser.ParseResult;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.expr.AssignExpr;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import com.github.javaparser.ast.stmt.BlockStmt;
+import com.github.javaparser.ast.stmt.ExpressionStmt;
+import com.github.javaparser.ast.stmt.ReturnStmt;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Entry point for embedding the extraction in another program: turns source code or parsed compilation units into
+ * graphs without touching the file system or the logs. One instance can be shared by any number of threads; each
+ * thread parses with its own {@link JavaParser}, configured per instance rather than through {@code StaticJavaParser}.
+ */
+public class GraphExtractor {
+
+    private final GraphExtractionConfig cfg;
+    private final TypeResolutionContext typeContext;
+    private final ThreadLocal<JavaParser> parsers;
+    private final SubtokenCache subtokenCache;
+
+    /**
+     * An extractor with the default options of the command line.
+     */
+    public GraphExtractor() {
+        this(new GraphExtractionConfig(new CommandLineValues()));
+    }
+
+    public GraphExtractor(GraphExtractionConfig cfg) {
+        this(cfg, null);
+    }
+
+    /**
+     * An extractor that also emits HAS_TYPE edges, parsing with the symbol resolver of {@code typeContext}.
+     * Like the context, such an extractor may only be used by one thread at a time.
+     */
+    public GraphExtractor(GraphExtractionConfig cfg, TypeResolutionContext typeContext) {
+        this.cfg = cfg;
+        this.typeContext = typeContext;
+        this.parsers = typeContext == null ? ThreadLocal.withInitial(() -> new JavaParser(new ParserConfiguration())) : null;
+        this.subtokenCache = new SubtokenCache(cfg.subtokenCacheSize);
+    }
+
+    public GraphExtractionConfig getConfig() {
+        return cfg;
+    }
+
+    TypeResolutionContext getTypeContext() {
+        return typeContext;
+    }
+
+    /**
+     * The cache of subtoken labels used by the conversions of this extractor, sized by {@code cfg.subtokenCacheSize}.
+     */
+    public SubtokenCache getSubtokenCache() {
+        return subtokenCache;
+    }
+
+    private JavaParser getParser() {
+        return typeContext == null ? parsers.get() : typeContext.getParser();
+    }
+
+    public CompilationUnit parse(String source) {
+        return unwrap(getParser().parse(source));
+    }
+
+    public CompilationUnit parse(byte[] source) {
+        return unwrap(getParser().parse(new ByteArrayInputStream(source)));
+    }
+
+    public CompilationUnit parse(Path path) throws IOException {
+        return unwrap(getParser().parse(path));
+    }
+
+    private static CompilationUnit unwrap(ParseResult<CompilationUnit> result) {
+        return result.getResult().filter(r -> result.isSuccessful())
+                .orElseThrow(() -> new ParseProblemException(result.getProblems()));
+    }
+
+    /**
+     * Returns the graphs of the methods of a source file.
+     *
+     * @throws ParseProblemException if the source does not parse
+     */
+    public List<Graph> extract(String source) {
+        return convert(parse(source), m -> true);
+    }
+
+    /**
+     * Returns the graphs of the methods of a compilation unit. The unit is only read: neither its nodes nor its
+     * token list (which {@code clone()} does not copy) are modified, so it may be shared with other threads that
+     * read it too.
+     */
+    public List<Graph> extract(CompilationUnit cu) {
+        return convert(cu, m -> true);
+    }
+
+    /**
+     * Converts the accepted methods of a compilation unit. Files with at least {@code cfg.parallelMethods} methods
+     * are converted on the common fork-join pool; the graphs are returned in source order either way.
+     */
+    List<Graph> convert(CompilationUnit cu, Predicate<MethodDeclaration> accept) {
+        return cu.findFirst(PackageDeclaration.class).map(pd -> {
+            String packageName = pd.getNameAsString();
+            List<MethodDeclaration> methods = cu.findAll(MethodDeclaration.class);
+            Stream<MethodDeclaration> stream = methods.stream();
+            if (typeContext == null && cfg.parallelMethods > 0 && methods.size() >= cfg.parallelMethods) {
+                stream = stream.parallel();  // 型の解決はスレッド安全でないので、resolve_types のときは逐次に変換する
+            }
+            return stream
+                    .filter(m -> m.getBody().isPresent())
+                    .filter(m -> !(cfg.excludeBoilerplates && isBoilerplate(m)))
+                    .filter(accept)
+                    .map(m -> MethodToGraphConverter.convert(m, packageName, cfg, typeContext, subtokenCache))
+                    .filter(g -> g.getNumVertices() <= cfg.maxVertices)
+                    .collect(Collectors.toList());
+        }).orElse(Collections.emptyList());
+    }
+
+    private static boolean isBoilerplate(MethodDeclaration m) {
+        // TODO constructor?
+        if (m.getNameAsString().equals("toString")
+                || m.getNameAsString().equals("hashCode")
+                || m.getNameAsString().equals("equals")) {
+            return true;
+        }
+        if (m.getNameAsString().startsWith("get") || m.getNameAsString().startsWith("is")) {
+            for (Node node : m.getChildNodes()) {
+                if (node instanceof BlockStmt) {
+                    BlockStmt block = (BlockStmt) node;
+                    if (block.getStatements().size() == 1
+                            && block.getStatements().get(0) instanceof ReturnStmt) {
+                        Expression expr = ((ReturnStmt) block.getStatements().get(0)).getExpression().orElse(null);
+                        if (expr instanceof FieldAccessExpr || expr instanceof NameExpr) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        if (m.getNameAsString().startsWith("set")) {
+            for (Node node : m.getChildNodes()) {
+                if (node instanceof BlockStmt) {
+                    BlockStmt block = (BlockStmt) node;
+                    if (block.getStatements().size() == 1
+                            && block.getStatements().get(0) instanceof ExpressionStmt
+                            && ((ExpressionStmt) block.getStatements().get(0)).getExpression() instanceof AssignExpr) {
+                        AssignExpr assign = (AssignExpr) ((ExpressionStmt) block.getStatements().get(0)).getExpression();
+                        if (assign.getTarget() instanceof FieldAccessExpr) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,58 @@
+package preprocessor;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes the sidecar index {@code <file>.idx} of a graph text file, one line per record:
+ * <pre>
+ * offset numVertices numEdges target
+ * </pre>
+ * where offset is the byte offset of the record's first line in the (uncompressed) text. Readers can count,
+ * shuffle and filter records by size from the index alone.
+ */
+public class GraphIndexWriter implements AutoCloseable {
+
+    public static final String SUFFIX = ".idx";
+
+    private final Path indexFile;
+    private final boolean append;
+    private BufferedWriter writer;
+
+    public GraphIndexWriter(Path dataFile) {
+        this(dataFile, false);
+    }
+
+    /**
+     * An index writer that appends to an existing index if {@code append} is true, for data files that are
+     * reopened in append mode.
+     */
+    public GraphIndexWriter(Path dataFile, boolean append) {
+        this.indexFile = dataFile.resolveSibling(dataFile.getFileName() + SUFFIX);
+        this.append = append;
+    }
+
+    public void add(long offset, Graph graph) throws IOException {
+        add(offset, graph.getNumVertices(), graph.getEdges().size(), graph.getMethodName());
+    }
+
+    public void add(long offset, int numVertices, int numEdges, String target) throws IOException {
+        if (writer == null) {
+            StandardOpenOption mode = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+            writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, mode);
+        }
+        writer.write(offset + " " + numVertices + " " + numEdges + " " + target + "\n");
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (writer != null) {
+            writer.close();
+        }
+    }
+}
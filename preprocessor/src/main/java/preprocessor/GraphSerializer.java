@@ -0,0 +1,123 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Serializes a graph in the text format of {@link GraphPrinter#print}, followed by the blank line that separates
+ * records, as UTF-8 bytes into a buffer reused for every graph of the thread. Labels are encoded and numbers are
+ * formatted in place, so no intermediate strings are created. The bytes are identical to
+ * {@code (GraphPrinter.print(graph) + "\n\n").getBytes(UTF_8)}.
+ */
+public class GraphSerializer {
+
+    private static final ThreadLocal<GraphSerializer> serializers = ThreadLocal.withInitial(GraphSerializer::new);
+
+    private byte[] buf = new byte[1 << 14];
+    private int size = 0;
+
+    public static GraphSerializer get() {
+        return serializers.get();
+    }
+
+    /**
+     * Serializes the graph into the buffer, replacing its previous content, and returns its length in bytes.
+     */
+    public int serialize(Graph graph) {
+        size = 0;
+        List<Graph.Vertex> vertices = graph.getVertices();
+        List<Graph.Edge> edges = graph.getEdges();
+        writeString(graph.getMethodName());
+        writeByte(' ');
+        writeInt(vertices.size());
+        writeByte(' ');
+        writeInt(edges.size());
+        writeByte('\n');
+        for (int i = 0; i < vertices.size(); i++) {
+            if (i > 0) {
+                writeByte(' ');
+            }
+            writeString(vertices.get(i).getLabel());
+        }
+        for (Graph.Edge edge : edges) {
+            writeByte('\n');
+            writeInt(edge.getSrc().getIndex());
+            writeByte(' ');
+            writeInt(edge.getDst().getIndex());
+            writeByte(' ');
+            writeInt(edge.getType().value);
+        }
+        writeByte('\n');
+        writeByte('\n');
+        return size;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, size);
+    }
+
+    private void ensureCapacity(int extra) {
+        if (size + extra > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + extra));
+        }
+    }
+
+    private void writeByte(char c) {
+        ensureCapacity(1);
+        buf[size++] = (byte) c;
+    }
+
+    private void writeInt(int v) {
+        ensureCapacity(11);
+        if (v < 0) {
+            if (v == Integer.MIN_VALUE) {
+                writeString(Integer.toString(v));
+                return;
+            }
+            buf[size++] = '-';
+            v = -v;
+        }
+        int start = size;
+        do {
+            buf[size++] = (byte) ('0' + v % 10);
+            v /= 10;
+        } while (v != 0);
+        // 下の桁から書いたので反転する
+        for (int i = start, j = size - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+    }
+
+    /**
+     * UTF-8 encoding with the same replacement of unpaired surrogates ('?') as {@link String#getBytes}.
+     */
+    private void writeString(String s) {
+        int n = s.length();
+        ensureCapacity(n * 3);
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                buf[size++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[size++] = (byte) (0xc0 | (c >> 6));
+                buf[size++] = (byte) (0x80 | (c & 0x3f));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                buf[size++] = (byte) (0xf0 | (cp >> 18));
+                buf[size++] = (byte) (0x80 | ((cp >> 12) & 0x3f));
+                buf[size++] = (byte) (0x80 | ((cp >> 6) & 0x3f));
+                buf[size++] = (byte) (0x80 | (cp & 0x3f));
+            } else if (Character.isSurrogate(c)) {
+                buf[size++] = '?';
+            } else {
+                buf[size++] = (byte) (0xe0 | (c >> 12));
+                buf[size++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                buf[size++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Writes the graphs extracted from one project.
+ */
+public interface GraphWriter extends AutoCloseable {
+
+    void write(Graph graph) throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    static GraphWriter open(Path outPath, String projectName, GraphExtractionConfig cfg) {
+        if (cfg.outputInPackage) {
+            return new PackageGraphWriter(outPath);
+        }
+        if (cfg.npyWordVocab != null) {
+            return new NpyShardWriter(outPath.resolve(projectName + ".npy"), cfg.npyShardSize, cfg.maxWordParts,
+                    cfg.npyWordVocab, cfg.npyTargetVocab);
+        }
+        if (cfg.packCapacity > 0) {
+            return new PackedGraphWriter(outPath.resolve(projectName + ".packed"), cfg.packCapacity, cfg.packWindow);
+        }
+        if (cfg.compress != null) {
+            return new BlockCompressedGraphWriter(outPath.resolve(projectName + ".graph" + cfg.compress.getExtension()),
+                    cfg.compress, cfg.compressBlockSize);
+        }
+        return new TextGraphWriter(outPath.resolve(projectName + ".graph"));
+    }
+}
@@ -0,0 +1,32 @@
+package preprocessor;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+public class InMemoryProjectSource implements ProjectSource {
+
+    private final String name;
+    private final String location;
+    private final List<SourceFile> files;
+
+    public InMemoryProjectSource(String name, String location, List<SourceFile> files) {
+        this.name = name;
+        this.location = location;
+        this.files = files;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Stream<SourceFile> files() {
+        return files.stream();
+    }
+
+    @Override
+    public String toString() {
+        return location;
+    }
+}
@@ -9,6 +9,7 @@ import java.time.format.DateTimeFormatter;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.*;
 import java.util.regex.Pattern;
@@ -30,6 +31,10 @@ public class LogFormatter extends Formatter {
 
     private AtomicInteger nameColumnWidth = new AtomicInteger(16);
 
+    // adjustLength の結果を、幅が変わるまでカテゴリごとに使い回す
+    private final Map<String, String> adjustedCategories = new ConcurrentHashMap<>();
+    private volatile int adjustedWidth = -1;
+
 
     public static void applyToRoot() {
         applyToRoot(new ConsoleHandler());
@@ -72,7 +77,11 @@ public class LogFormatter extends Formatter {
             category = record.getLoggerName();
         }
         int width = nameColumnWidth.intValue();
-        category = adjustLength(category, width);
+        if (width != adjustedWidth) {
+            adjustedCategories.clear();
+            adjustedWidth = width;
+        }
+        category = adjustedCategories.computeIfAbsent(category, c -> adjustLength(c, width));
         sb.append("[");
         sb.append(category);
         sb.append("] ");
@@ -0,0 +1,77 @@
+package preprocessor;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Heap budget shared by the extraction workers. A file is admitted only after a share of the budget proportional
+ * to its size has been reserved, so that a few giant files parsed at the same time cannot exhaust the heap.
+ */
+public class MemoryBudget {
+
+    public enum OversizedPolicy {
+        /** files whose estimate exceeds the whole budget are not extracted */
+        SKIP,
+        /** such files wait until every other file has been released and are then extracted alone */
+        ALONE
+    }
+
+    private static final int UNIT = 1024;  // permit 1つあたりのバイト数
+
+    private final int capacity;
+    private final double bytesPerSourceByte;
+    private final OversizedPolicy oversizedPolicy;
+    private final Semaphore permits;
+
+    public MemoryBudget(long budgetBytes, double bytesPerSourceByte, OversizedPolicy oversizedPolicy) {
+        this.capacity = (int) Math.min(Integer.MAX_VALUE, budgetBytes / UNIT);
+        this.bytesPerSourceByte = bytesPerSourceByte;
+        this.oversizedPolicy = oversizedPolicy;
+        this.permits = new Semaphore(capacity, true);  // fair: 大きいファイルが小さいファイルに追い越され続けないように
+    }
+
+    public boolean isLimited() {
+        return capacity > 0;
+    }
+
+    /**
+     * Blocks until the estimated heap usage of a file of the given size fits into the budget.
+     * Returns null if the file is oversized and the policy is {@link OversizedPolicy#SKIP}.
+     */
+    public Reservation reserve(long sourceBytes) throws InterruptedException {
+        if (!isLimited()) {
+            return new Reservation(0);
+        }
+        long estimate = (long) Math.ceil(sourceBytes * bytesPerSourceByte / UNIT);
+        int amount;
+        if (estimate > capacity) {
+            if (oversizedPolicy == OversizedPolicy.SKIP) {
+                return null;
+            }
+            amount = capacity;
+        } else {
+            amount = (int) Math.max(1, estimate);
+        }
+        permits.acquire(amount);
+        return new Reservation(amount);
+    }
+
+    public long getAvailableBytes() {
+        return (long) permits.availablePermits() * UNIT;
+    }
+
+    public class Reservation implements AutoCloseable {
+        private int amount;
+
+        private Reservation(int amount) {
+            this.amount = amount;
+        }
+
+        @Override
+        public void close() {
+            if (amount > 0) {
+                permits.release(amount);
+                amount = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package preprocessor;
+
+import com.github.javaparser.JavaToken;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.Node;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static preprocessor.Graph.EdgeType;
+import static preprocessor.Graph.Vertex;
+import static preprocessor.Graph.VertexType;
+
+/**
+ * NEXT_TOKEN edges along the tokens of the method body. Tokens that have no AST vertex (punctuation, keywords)
+ * are added as vertices, attached by CHILD edges to the smallest enclosing syntax node if {@code childEdges} is set.
+ * The token list is only read, as it belongs to the caller's compilation unit and to every clone of it.
+ */
+public class NextTokenEdgeProducer implements EdgeProducer {
+
+    private final boolean childEdges;
+    private final Map<Range, Vertex> astTokens = new HashMap<>();
+    private final List<Vertex> syntaxNodes = new ArrayList<>();
+
+    public NextTokenEdgeProducer(boolean childEdges) {
+        this.childEdges = childEdges;
+    }
+
+    @Override
+    public void visit(GraphBuilder graph, Node node, Vertex vertex, Vertex parent) {
+        // AST に含まれているトークンと、追加するトークンの親の候補を走査中に集めておく
+        if (vertex.getType() == VertexType.SYNTAX_TOKEN) {
+            if (astTokens.put(vertex.getRange(), vertex) != null) {
+                throw new IllegalStateException("duplicate token range: " + vertex.getRange());
+            }
+        } else if (childEdges && vertex.getRange() != null) {
+            syntaxNodes.add(vertex);
+        }
+    }
+
+    @Override
+    public void finish(GraphBuilder graph) {
+        graph.getMethod().getBody().ifPresent(methodBody -> {
+            // AST に含まれないトークンを抽出
+            List<JavaToken> rawTokens = new ArrayList<>();
+            methodBody.getTokenRange().ifPresent(tr -> {
+                for (JavaToken token : tr) {
+                    if (token.getText().strip().equals("")
+                            || token.getText().strip().startsWith("//")
+                            || token.getText().strip().startsWith("/*")) {
+                        continue;  // 空白とコメントは飛ばす。トークン列は他のメソッドの変換と共有しているので削除はしない
+                    }
+                    if (token.getRange().isPresent()) {
+                        rawTokens.add(token);
+                    }
+                }
+            });
+
+            // 全トークンの Vertex オブジェクトを作り、ソースコード中の出現順に並べる
+            List<Vertex> tokenSequence = new ArrayList<>();
+            List<Vertex> addedVertices = new ArrayList<>();
+            for (JavaToken rawToken : rawTokens) {
+                Range range = rawToken.getRange().get();
+                Vertex vertex = astTokens.get(range);
+                if (vertex == null) {
+                    vertex = graph.addVertex(rawToken.getText(), range, VertexType.SYNTAX_TOKEN);
+                    addedVertices.add(vertex);
+                }
+                tokenSequence.add(vertex);
+            }
+
+            // NextToken の辺を張る
+            for (int i = 0; i < tokenSequence.size() - 1; i++) {
+                graph.addEdge(tokenSequence.get(i), tokenSequence.get(i + 1), EdgeType.NEXT_TOKEN);
+            }
+
+            if (!childEdges) {
+                return;
+            }
+            // Child の辺を張る
+            for (Vertex addedVertex : addedVertices) {
+                // parent = addedVertex の出現位置を含む最小範囲の syntax_node
+                // TODO この実装は O(|V|^2) なので高速化の余地あり
+                Vertex parent = null;
+                for (Vertex vertex : syntaxNodes) {
+                    if (vertex.equals(parent)) {
+                        continue;
+                    }
+                    if (vertex.getRange().contains(addedVertex.getRange())) {
+                        if (parent == null || parent.getRange().contains(vertex.getRange())) {
+                            parent = vertex;
+                        }
+                    }
+                }
+                if (parent != null) {
+                    graph.addEdge(parent, addedVertex, EdgeType.CHILD);
+                }
+            }
+        });
+    }
+}
@@ -120,6 +120,10 @@ public class NodeLabelUtil {
         }
     });
 
+    /**
+     * Splits the text of a token into normalised subtokens joined by '|'. See {@link SubtokenCache} for a memoised
+     * version.
+     */
     public static String splitToSubtokens(String str) {
         str = str.replace("|", " ").trim();
         return Stream.of(str.split("(?<=[a-z])(?=[A-Z])|_|(?<=[A-Z])(?=[A-Z][a-z])|\\s+"))
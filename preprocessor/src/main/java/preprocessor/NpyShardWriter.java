@@ -0,0 +1,115 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * Writes graphs as pre-tensorised NumPy shards, {@code <project>.npy/<k>/}, each holding up to
+ * {@code shardSize} graphs:
+ * <ul>
+ * <li>vertices.npy: int32 [N, maxWordParts], subtoken ids of every vertex padded with {@link Vocabulary#PAD}</li>
+ * <li>edges.npy: int32 [E, 3], (src, dst, type) with src and dst local to their graph</li>
+ * <li>vertex_offsets.npy, edge_offsets.npy: int64 [G + 1], graph g owns rows offsets[g] until offsets[g + 1]</li>
+ * <li>targets.npy: int32 [G], target ids</li>
+ * </ul>
+ */
+public class NpyShardWriter implements GraphWriter {
+
+    private final Path shardRoot;
+    private final int shardSize;
+    private final int maxWordParts;
+    private final Vocabulary wordVocab;
+    private final Vocabulary targetVocab;
+
+    private int shardIndex = 0;
+    private int[] vertices = new int[1024];
+    private int numVertexValues = 0;
+    private int[] edges = new int[1024];
+    private int numEdgeValues = 0;
+    private long[] vertexOffsets = new long[64];
+    private long[] edgeOffsets = new long[64];
+    private int[] targets = new int[64];
+    private int numGraphs = 0;
+
+    public NpyShardWriter(Path shardRoot, int shardSize, int maxWordParts, Vocabulary wordVocab, Vocabulary targetVocab) {
+        this.shardRoot = shardRoot;
+        this.shardSize = shardSize;
+        this.maxWordParts = maxWordParts;
+        this.wordVocab = wordVocab;
+        this.targetVocab = targetVocab;
+    }
+
+    @Override
+    public void write(Graph graph) throws IOException {
+        ensureGraphCapacity(numGraphs + 2);
+        vertexOffsets[numGraphs] = numVertexValues / maxWordParts;
+        edgeOffsets[numGraphs] = numEdgeValues / 3;
+        targets[numGraphs] = targetVocab.lookupIdx(graph.getMethodName());
+
+        vertices = ensureCapacity(vertices, numVertexValues + graph.getNumVertices() * maxWordParts);
+        for (Graph.Vertex vertex : graph.getVertices()) {
+            // trainer は maxWordParts を超える subtoken をランダムに選ぶが、ここでは先頭から取る
+            String[] subtokens = vertex.getLabel().split("\\|");
+            for (int i = 0; i < maxWordParts; i++) {
+                vertices[numVertexValues++] = i < subtokens.length ? wordVocab.lookupIdx(subtokens[i]) : Vocabulary.PAD;
+            }
+        }
+
+        edges = ensureCapacity(edges, numEdgeValues + graph.getEdges().size() * 3);
+        for (Graph.Edge edge : graph.getEdges()) {
+            edges[numEdgeValues++] = edge.getSrc().getIndex();
+            edges[numEdgeValues++] = edge.getDst().getIndex();
+            edges[numEdgeValues++] = edge.getType().value;
+        }
+
+        numGraphs++;
+        if (numGraphs >= shardSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+    }
+
+    private void flush() throws IOException {
+        if (numGraphs == 0) {
+            return;
+        }
+        int numVertices = numVertexValues / maxWordParts;
+        int numEdges = numEdgeValues / 3;
+        vertexOffsets[numGraphs] = numVertices;
+        edgeOffsets[numGraphs] = numEdges;
+
+        Path dir = shardRoot.resolve(String.format("%05d", shardIndex++));
+        Files.createDirectories(dir);
+        NpyWriter.writeInt32(dir.resolve("vertices.npy"), vertices, numVertexValues, numVertices, maxWordParts);
+        NpyWriter.writeInt32(dir.resolve("edges.npy"), edges, numEdgeValues, numEdges, 3);
+        NpyWriter.writeInt64(dir.resolve("vertex_offsets.npy"), vertexOffsets, numGraphs + 1, numGraphs + 1);
+        NpyWriter.writeInt64(dir.resolve("edge_offsets.npy"), edgeOffsets, numGraphs + 1, numGraphs + 1);
+        NpyWriter.writeInt32(dir.resolve("targets.npy"), targets, numGraphs, numGraphs);
+
+        numVertexValues = 0;
+        numEdgeValues = 0;
+        numGraphs = 0;
+    }
+
+    private void ensureGraphCapacity(int capacity) {
+        if (capacity > targets.length) {
+            int newLength = Math.max(capacity, targets.length * 2);
+            vertexOffsets = Arrays.copyOf(vertexOffsets, newLength);
+            edgeOffsets = Arrays.copyOf(edgeOffsets, newLength);
+            targets = Arrays.copyOf(targets, newLength);
+        }
+    }
+
+    private static int[] ensureCapacity(int[] array, int capacity) {
+        if (capacity <= array.length) {
+            return array;
+        }
+        return Arrays.copyOf(array, Math.max(capacity, array.length * 2));
+    }
+}
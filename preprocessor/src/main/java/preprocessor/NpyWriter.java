@@ -0,0 +1,67 @@
+package preprocessor;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.StringJoiner;
+
+/**
+ * Writes little-endian integer arrays in the NumPy .npy format (version 1.0), so that they can be loaded with
+ * {@code numpy.load(path, mmap_mode='r')}.
+ */
+public class NpyWriter {
+
+    private static final byte[] MAGIC = {(byte) 0x93, 'N', 'U', 'M', 'P', 'Y', 1, 0};
+
+    public static void writeInt32(Path path, int[] data, int length, int... shape) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+            writeHeader(out, "<i4", shape);
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < length; i++) {
+                if (buf.remaining() < Integer.BYTES) {
+                    out.write(buf.array(), 0, buf.position());
+                    buf.clear();
+                }
+                buf.putInt(data[i]);
+            }
+            out.write(buf.array(), 0, buf.position());
+        }
+    }
+
+    public static void writeInt64(Path path, long[] data, int length, int... shape) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(path), 1 << 16)) {
+            writeHeader(out, "<i8", shape);
+            ByteBuffer buf = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+            for (int i = 0; i < length; i++) {
+                if (buf.remaining() < Long.BYTES) {
+                    out.write(buf.array(), 0, buf.position());
+                    buf.clear();
+                }
+                buf.putLong(data[i]);
+            }
+            out.write(buf.array(), 0, buf.position());
+        }
+    }
+
+    private static void writeHeader(OutputStream out, String descr, int... shape) throws IOException {
+        StringJoiner dims = new StringJoiner(", ", "(", shape.length == 1 ? ",)" : ")");
+        for (int dim : shape) {
+            dims.add(Integer.toString(dim));
+        }
+        StringBuilder header = new StringBuilder()
+                .append("{'descr': '").append(descr).append("', 'fortran_order': False, 'shape': ").append(dims).append(", }");
+        // magic(8) + header_len(2) + header が 64 バイト境界に揃うよう空白で埋め、改行で終える
+        int total = MAGIC.length + 2 + header.length() + 1;
+        header.append(" ".repeat((64 - total % 64) % 64)).append('\n');
+        byte[] headerBytes = header.toString().getBytes(StandardCharsets.US_ASCII);
+        out.write(MAGIC);
+        out.write(headerBytes.length & 0xff);
+        out.write((headerBytes.length >> 8) & 0xff);
+        out.write(headerBytes);
+    }
+}
@@ -0,0 +1,99 @@
+package preprocessor;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Writes the graphs of each package into the append-only segment {@code <package>/segment.graph}, in the text format
+ * of {@link TextGraphWriter}, with a {@link GraphIndexWriter} index alongside. Graph N of a package (counted from 1,
+ * as the former {@code <package>/<N>.txt} files) is the record described by line N of the index.
+ * Only the segments of the most recently written packages are kept open; the others are reopened for appending.
+ */
+public class PackageGraphWriter implements GraphWriter {
+
+    public static final String SEGMENT_NAME = "segment.graph";
+    private static final int MAX_OPEN_SEGMENTS = 16;
+
+    private final Path outPath;
+    private final Map<String, Long> offsets = new HashMap<>();
+    private final Set<String> created = new HashSet<>();
+    private final LinkedHashMap<String, Segment> open = new LinkedHashMap<>(16, 0.75f, true);
+
+    public PackageGraphWriter(Path outPath) {
+        this.outPath = outPath;
+    }
+
+    @Override
+    public void write(Graph graph) throws IOException {
+        String packageName = graph.getPackageName();
+        Segment segment = open.get(packageName);
+        if (segment == null) {
+            segment = openSegment(packageName);
+        }
+        GraphSerializer serializer = GraphSerializer.get();
+        int length = serializer.serialize(graph);
+        long offset = offsets.getOrDefault(packageName, 0L);
+        segment.index.add(offset, graph);
+        serializer.writeTo(segment.out);
+        offsets.put(packageName, offset + length);
+    }
+
+    private Segment openSegment(String packageName) throws IOException {
+        if (open.size() >= MAX_OPEN_SEGMENTS) {
+            Iterator<Segment> eldest = open.values().iterator();
+            eldest.next().close();
+            eldest.remove();
+        }
+        Path segmentFile = outPath.resolve(packageName).resolve(SEGMENT_NAME);
+        // 前回の実行の出力は最初に開いたときに切り詰め、以降は追記する
+        boolean append = !created.add(packageName);
+        if (!append) {
+            segmentFile.getParent().toFile().mkdirs();
+        }
+        Segment segment = new Segment(segmentFile, append);
+        open.put(packageName, segment);
+        return segment;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (Segment segment : open.values()) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        open.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static class Segment {
+        private final OutputStream out;
+        private final GraphIndexWriter index;
+
+        Segment(Path segmentFile, boolean append) throws IOException {
+            this.out = new BufferedOutputStream(new FileOutputStream(segmentFile.toFile(), append), 1 << 16);
+            this.index = new GraphIndexWriter(segmentFile, append);
+        }
+
+        void close() throws IOException {
+            index.close();
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,129 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.stream.Collectors;
+
+/**
+ * Packs several graphs into blocks of at most {@code capacity} vertices as disconnected components,
+ * so that a trainer padding to a fixed number of vertices wastes little of each slot.
+ * <p>
+ * Each block is written as
+ * <pre>
+ * numGraphs numVertices numEdges
+ * target_1 ... target_numGraphs
+ * offset_1 ... offset_numGraphs
+ * label_1 ... label_numVertices
+ * src dst type      (numEdges lines, indices are block-global)
+ * </pre>
+ * and blocks are separated by blank lines. Graph i owns the vertices from offset_i up to offset_(i+1).
+ */
+public class PackedGraphWriter implements GraphWriter {
+
+    private final Path packedFile;
+    private final int capacity;
+    private final int window;
+    private final List<Graph> pending = new ArrayList<>();
+    private Writer fw;
+
+    public PackedGraphWriter(Path packedFile, int capacity, int window) {
+        this.packedFile = packedFile;
+        this.capacity = capacity;
+        this.window = window;
+    }
+
+    @Override
+    public void write(Graph graph) throws IOException {
+        pending.add(graph);
+        if (pending.size() >= window) {
+            flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (fw != null) {
+            fw.close();
+        }
+    }
+
+    private void flush() throws IOException {
+        if (pending.isEmpty()) {
+            return;
+        }
+        if (fw == null) {
+            fw = Files.newBufferedWriter(packedFile, StandardCharsets.UTF_8);
+        }
+        for (List<Graph> block : pack(pending, capacity)) {
+            fw.write(print(block) + "\n\n");
+        }
+        pending.clear();
+    }
+
+    /**
+     * First-fit decreasing. Graphs larger than the capacity get a block of their own.
+     */
+    static List<List<Graph>> pack(List<Graph> graphs, int capacity) {
+        List<Graph> sorted = new ArrayList<>(graphs);
+        sorted.sort(Comparator.comparingInt(Graph::getNumVertices).reversed());  // stable なので同じサイズは入力順
+        List<List<Graph>> blocks = new ArrayList<>();
+        List<Integer> free = new ArrayList<>();
+        for (Graph graph : sorted) {
+            int n = graph.getNumVertices();
+            int target = -1;
+            for (int i = 0; i < blocks.size(); i++) {
+                if (free.get(i) >= n) {
+                    target = i;
+                    break;
+                }
+            }
+            if (target < 0) {
+                blocks.add(new ArrayList<>());
+                free.add(capacity);
+                target = blocks.size() - 1;
+            }
+            blocks.get(target).add(graph);
+            free.set(target, free.get(target) - n);
+        }
+        return blocks;
+    }
+
+    static String print(List<Graph> block) {
+        int numVertices = block.stream().mapToInt(Graph::getNumVertices).sum();
+        int numEdges = block.stream().mapToInt(g -> g.getEdges().size()).sum();
+
+        StringJoiner joiner = new StringJoiner("\n");
+        joiner.add(block.size() + " " + numVertices + " " + numEdges);
+        joiner.add(block.stream().map(Graph::getMethodName).collect(Collectors.joining(" ")));
+
+        StringJoiner offsets = new StringJoiner(" ");
+        int offset = 0;
+        for (Graph graph : block) {
+            offsets.add(Integer.toString(offset));
+            offset += graph.getNumVertices();
+        }
+        joiner.add(offsets.toString());
+
+        joiner.add(block.stream()
+                .flatMap(g -> g.getVertices().stream())
+                .map(Graph.Vertex::getLabel)
+                .collect(Collectors.joining(" ")));
+
+        offset = 0;
+        for (Graph graph : block) {
+            for (Graph.Edge edge : graph.getEdges()) {
+                joiner.add((offset + edge.getSrc().getIndex()) + " " + (offset + edge.getDst().getIndex()) + " " + edge.getType().value);
+            }
+            offset += graph.getNumVertices();
+        }
+        return joiner.toString();
+    }
+}
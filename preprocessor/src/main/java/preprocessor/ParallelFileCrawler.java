@@ -0,0 +1,77 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+
+/**
+ * Lists the files under a directory by reading every subdirectory as its own task on an I/O executor, so that
+ * the metadata round trips of a network or cold disk overlap instead of being made one at a time. Like
+ * {@link Files#walk}, symbolic links to directories are not followed. The files are returned sorted by path.
+ */
+public class ParallelFileCrawler {
+
+    private final Executor executor;
+    private final Predicate<Path> filter;
+    private final ConcurrentLinkedQueue<Path> found = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+
+    private ParallelFileCrawler(Executor executor, Predicate<Path> filter) {
+        this.executor = executor;
+        this.filter = filter;
+    }
+
+    /**
+     * Returns the regular files under {@code root} accepted by {@code filter}.
+     */
+    public static List<Path> crawl(Path root, Executor executor, Predicate<Path> filter) throws IOException {
+        ParallelFileCrawler crawler = new ParallelFileCrawler(executor, filter);
+        crawler.submit(root);
+        try {
+            crawler.done.join();
+        } catch (java.util.concurrent.CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        }
+        List<Path> files = new ArrayList<>(crawler.found);
+        files.sort(Comparator.naturalOrder());
+        return files;
+    }
+
+    private void submit(Path directory) {
+        pending.incrementAndGet();
+        executor.execute(() -> {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+                for (Path entry : entries) {
+                    if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+                        submit(entry);
+                    } else if (filter.test(entry) && Files.isRegularFile(entry)) {
+                        found.add(entry);
+                    }
+                }
+            } catch (IOException e) {
+                done.completeExceptionally(new UncheckedIOException(e));
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e);
+            } finally {
+                if (pending.decrementAndGet() == 0) {
+                    done.complete(null);
+                }
+            }
+        });
+    }
+}
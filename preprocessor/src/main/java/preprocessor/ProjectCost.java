@@ -0,0 +1,64 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * Cheap estimate of how long a project takes to extract, from the size and number of the source files that would
+ * be parsed. Only file sizes are read, so estimating a whole dataset costs one directory walk.
+ */
+public class ProjectCost {
+
+    // ファイルごとの固定費 (パーサの初期化など) を何バイト分とみなすか
+    private static final long BYTES_PER_FILE = 4096;
+
+    private final long bytes;
+    private final int files;
+
+    public ProjectCost(long bytes, int files) {
+        this.bytes = bytes;
+        this.files = files;
+    }
+
+    public static ProjectCost estimate(ProjectSource source) throws IOException {
+        return estimate(source, null);
+    }
+
+    /**
+     * Estimates the cost of a project, listing its files with the help of {@code ioExecutor} if it is not null.
+     */
+    public static ProjectCost estimate(ProjectSource source, Executor ioExecutor) throws IOException {
+        long bytes = 0;
+        int files = 0;
+        try (Stream<SourceFile> stream = source.files(ioExecutor)) {
+            for (SourceFile file : (Iterable<SourceFile>) stream::iterator) {
+                if (!file.getPath().getFileName().toString().contains("Test")) {
+                    bytes += file.getSize();
+                    files++;
+                }
+            }
+        }
+        return new ProjectCost(bytes, files);
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getFiles() {
+        return files;
+    }
+
+    /**
+     * The estimate in byte-equivalents, comparable between projects.
+     */
+    public long get() {
+        return bytes + BYTES_PER_FILE * files;
+    }
+
+    @Override
+    public String toString() {
+        return bytes / 1024 + " KiB in " + files + " files";
+    }
+}
@@ -1,122 +1,232 @@
 package preprocessor;
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.*;
 import java.util.stream.Stream;
 
 public class ProjectExtractionTask implements Runnable {
 
-    private final File projectDir;
+    private final ProjectSource source;
     private final Path outPath;
     private final GraphExtractionConfig cfg;
     private Logger logger;
+    private RateLimitedLogger warnings;
+    private final boolean standalone;
+    private DedupIndex dedup;
+    private MemoryBudget memoryBudget;
+    private Sampler sampler;
+    private LongAdder extractedGraphs;
+    private Executor ioExecutor;
+    private Executor fileExecutor;
+    private final AtomicLong sourceBytes = new AtomicLong();
+    private final AtomicLong numGraphs = new AtomicLong();
+    private volatile boolean complete;
+    private volatile SubtokenCache subtokenCache;
 
-    public ProjectExtractionTask(File projectDir, Path outPath, GraphExtractionConfig cfg, Logger logger) {
-        this(projectDir, outPath, cfg);
-        this.logger = logger;
+    public ProjectExtractionTask(ProjectSource source, Path outPath, GraphExtractionConfig cfg, ExtractionContext ctx) {
+        this.source = source;
+        this.outPath = outPath;
+        this.cfg = cfg;
+        this.logger = ctx.getLogger();
+        this.warnings = ctx.getWarnings();
+        this.standalone = false;
+        this.dedup = ctx.getDedup();
+        this.memoryBudget = ctx.getMemoryBudget();
+        this.sampler = ctx.getSampler();
+        this.extractedGraphs = ctx.getExtractedGraphs();
+        this.ioExecutor = ctx.getIoExecutor();
+        this.fileExecutor = ctx.getFileExecutor();
     }
 
-    public ProjectExtractionTask(File projectDir, Path outPath, GraphExtractionConfig cfg) {
-        this.projectDir = projectDir;
+    public ProjectExtractionTask(ProjectSource source, Path outPath, GraphExtractionConfig cfg) {
+        this.source = source;
         this.outPath = outPath;
         this.cfg = cfg;
+        this.dedup = new DedupIndex();
+        this.memoryBudget = cfg.newMemoryBudget();
+        this.sampler = cfg.newSampler("").forProject(source.getName());
+        this.extractedGraphs = new LongAdder();
+        this.ioExecutor = cfg.newIoExecutor();
+        this.fileExecutor = cfg.newFileExecutor();
         Logger logger = Logger.getLogger(DatasetExtractionTask.class.getName());
         logger.setLevel(Level.INFO);
-        Handler handler = new StreamHandler(System.out, new LogFormatter());
-        handler.setFormatter(new LogFormatter());
-        logger.addHandler(handler);
-        this.logger = logger;
-    }
-
-    private class GraphWriter implements AutoCloseable {
-
-        private FileWriter fw;
-        private Map<String, Integer> indices = new HashMap<>();
-
-        public void write(String content, String packageName) throws IOException {
-            if (cfg.outputInPackage) {
-                int index = indices.getOrDefault(packageName, 0);
-                index++;
-
-                Path graphFile = outPath.resolve(packageName).resolve(index + ".txt");
-                if (!graphFile.getParent().toFile().exists()) {
-                    graphFile.getParent().toFile().mkdirs();
-                }
-
-                try (var lfw = new FileWriter(graphFile.toFile())) {
-                    lfw.write(content);
-                }
-
-                indices.put(packageName, index);
-            } else {
-                if (fw == null) {
-                    String projectName = projectDir.getName();
-                    File graphFile = outPath.resolve(projectName + ".graph").toFile();
-                    fw = new FileWriter(graphFile);
-                }
-                fw.write(content + "\n\n");
-            }
-        }
-
-        @Override
-        public void close() throws Exception {
-            if (fw != null) {
-                fw.close();
-            }
+        try {
+            AsyncLogHandler.install(logger, "stdout", () -> new StreamHandler(System.out, new LogFormatter()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
+        this.logger = logger;
+        this.warnings = new RateLimitedLogger(logger, 20, 10_000);
+        this.standalone = true;
     }
 
     @Override
     public void run() {
-        String projectName = projectDir.getName();
-        File vocabFile = outPath.resolve(projectName + ".vocab").toFile();
-        File targetFile = outPath.resolve(projectName + ".target").toFile();
+        String projectName = source.getName();
+        Path vocabFile = outPath.resolve(projectName + ".vocab");
+        Path targetFile = outPath.resolve(projectName + ".target");
 
         WordHistogram vocabHist = new WordHistogram();
         WordHistogram targetHist = new WordHistogram();
-        try (GraphWriter gw = new GraphWriter();
-             FileWriter vw = new FileWriter(vocabFile);
-             FileWriter tw = new FileWriter(targetFile)) {
-            Files.walk(projectDir.toPath())
-                    .filter(path -> path.toString().endsWith(".java"))
-                    .filter(path -> !path.getFileName().toString().contains("Test"))
-                    .flatMap(path -> {
-                        FileExtractionTask task = new FileExtractionTask(path, cfg);
-                        List<Graph> graphs = new ArrayList<>();
-                        try {
-                            graphs = task.call();
-                        } catch (Exception | StackOverflowError e) {  // 型の解決時にStackOverflowになることがある
-                            logger.warning("failed to extract file: " + path);
+        TypeResolutionContext typeContext = cfg.resolveTypes ? new TypeResolutionContext(cfg.typeResolutionBudgetMs, source.getRoot()) : null;
+        GraphExtractor extractor = new GraphExtractor(cfg, typeContext);
+        subtokenCache = extractor.getSubtokenCache();
+        AtomicInteger skippedFiles = new AtomicInteger();
+        AtomicInteger skippedMethods = new AtomicInteger();
+        AtomicInteger numMethods = new AtomicInteger();
+        try (GraphWriter gw = GraphWriter.open(outPath, projectName, cfg);
+             Writer vw = Files.newBufferedWriter(vocabFile, StandardCharsets.UTF_8);
+             Writer tw = Files.newBufferedWriter(targetFile, StandardCharsets.UTF_8);
+             Stream<SourceFile> files = readAhead(source.files(ioExecutor)
+                     .filter(file -> !file.getPath().getFileName().toString().contains("Test"))
+                     .filter(file -> sampler.acceptFile(file.getRelativePath())));
+             Stream<List<Graph>> converted = convert(dedupFiles(files, skippedFiles), extractor)) {
+            converted
+                    .flatMap(List::stream)
+                    .filter(g -> {
+                        if (cfg.dedupMethods && !dedup.addGraph(g)) {
+                            skippedMethods.incrementAndGet();
+                            return false;
                         }
-                        return graphs.stream();
+                        return true;
                     })
+                    .takeWhile(g -> sampler.getMaxMethodsPerProject() <= 0
+                            || numMethods.incrementAndGet() <= sampler.getMaxMethodsPerProject())  // 上限に達したら残りのファイルは読まない
                     .forEach(g -> {
                         g.getVertices().stream()
                                 .map(Graph.Vertex::getLabel)
                                 .flatMap(s -> Stream.of(s.split("\\|")))
                                 .forEach(vocabHist::count);
                         targetHist.count(g.getMethodName());
+                        numGraphs.incrementAndGet();
+                        extractedGraphs.increment();
                         try {
-                            gw.write(GraphPrinter.print(g), g.getPackageName());
+                            gw.write(g);
                         } catch (IOException e) {
                             throw new UncheckedIOException(e);
                         }
                     });
             vw.write(vocabHist.toString());
             tw.write(targetHist.toString());
-            logger.info("complete preprocessing " + projectDir);
+            if (cfg.dedupFiles || cfg.dedupMethods) {
+                logger.info("skipped " + skippedFiles + " duplicate files and " + skippedMethods + " duplicate methods in " + source);
+            }
+            if (typeContext != null) {
+                logger.info(typeContext.stats() + " in " + source);
+            }
+            logger.fine(subtokenCache.stats() + " in " + source);
+            if (standalone && cfg.reorderVertices) {
+                logger.info(VertexOrdering.stats());
+            }
+            complete = true;
+            logger.info("complete preprocessing " + source);
         } catch (Exception e) {
-            logger.log(Level.SEVERE, "failed to process project: " + projectDir, e);
+            logger.log(Level.SEVERE, "failed to process project: " + source, e);
+        } finally {
+            if (standalone) {
+                warnings.reportSuppressed();
+                if (ioExecutor != null) {
+                    ((ExecutorService) ioExecutor).shutdown();
+                }
+                if (fileExecutor != null) {
+                    ((ExecutorService) fileExecutor).shutdown();
+                }
+            }
         }
     }
-}
 
+    /**
+     * Converts the files on the file executor, if any, handing the graphs on in file order so that deduplication,
+     * the method limit and the output do not depend on which file finishes first.
+     */
+    private Stream<List<Graph>> convert(Stream<SourceFile> files, GraphExtractor extractor) {
+        if (fileExecutor == null) {
+            return files.map(file -> extractFile(file, extractor));
+        }
+        return ReorderBuffer.map(files, file -> extractFile(file, extractor), fileExecutor, 2 * cfg.fileWorkers);
+    }
+
+    /**
+     * Drops duplicated files in file order, before they are handed to the file executor, so that the same copy is
+     * kept whatever the number of threads.
+     */
+    private Stream<SourceFile> dedupFiles(Stream<SourceFile> files, AtomicInteger skippedFiles) {
+        if (!cfg.dedupFiles) {
+            return files;
+        }
+        return files.map(file -> {
+            try {
+                byte[] content = file.getContent();
+                if (!dedup.addFile(content)) {
+                    skippedFiles.incrementAndGet();
+                    return null;
+                }
+                return file.withContent(content);
+            } catch (IOException e) {
+                return file;  // 読めないファイルは変換時に警告する
+            }
+        }).filter(Objects::nonNull);
+    }
+
+    private List<Graph> extractFile(SourceFile file, GraphExtractor extractor) {
+        try (MemoryBudget.Reservation reservation = memoryBudget.reserve(file.getSize())) {
+            if (reservation == null) {
+                warnings.warning("skipped file exceeding the memory budget", file);
+                return Collections.emptyList();
+            }
+            sourceBytes.addAndGet(file.getSize());
+            return new FileExtractionTask(file, extractor, sampler).call();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while waiting for memory budget", e);
+        } catch (Exception | StackOverflowError e) {  // 型の解決時にStackOverflowになることがある
+            warnings.warning("failed to extract file", file);
+            return Collections.emptyList();
+        }
+    }
+
+    private Stream<SourceFile> readAhead(Stream<SourceFile> files) {
+        if (ioExecutor == null) {
+            return files;
+        }
+        // 読み込みを待つ時間が無いよう、I/O スレッド数の数倍のファイルを先読みする
+        return FileReadAhead.readAhead(files, ioExecutor, 4 * cfg.ioThreads, cfg.readAheadBytes);
+    }
+
+    /**
+     * Whether the project was extracted to the end; files that failed to parse are skipped and do not count.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * The subtoken cache of the project's extractor, or null if the task has not run.
+     */
+    public SubtokenCache getSubtokenCache() {
+        return subtokenCache;
+    }
+
+    public ShardManifest.Project toManifestEntry(String dataType) {
+        ShardManifest.Project entry = new ShardManifest.Project();
+        entry.dataType = dataType;
+        entry.name = source.getName();
+        entry.sourceBytes = sourceBytes.get();
+        entry.graphs = numGraphs.get();
+        entry.complete = complete;
+        return entry;
+    }
+}
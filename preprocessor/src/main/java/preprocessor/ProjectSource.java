@@ -0,0 +1,34 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * A project to extract graphs from. The files are either on a (possibly zip) file system or streamed out of an archive.
+ */
+public interface ProjectSource {
+
+    String getName();
+
+    /**
+     * The directory holding the files of the project, or null if they are not on a file system.
+     */
+    default Path getRoot() {
+        return null;
+    }
+
+    /**
+     * Returns the .java files of the project. The returned stream must be closed by the caller.
+     */
+    Stream<SourceFile> files() throws IOException;
+
+    /**
+     * Returns the .java files of the project, listing them with the help of {@code ioExecutor} where that helps.
+     * The returned stream must be closed by the caller.
+     */
+    default Stream<SourceFile> files(Executor ioExecutor) throws IOException {
+        return files();
+    }
+}
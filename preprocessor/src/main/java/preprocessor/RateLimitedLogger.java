@@ -0,0 +1,78 @@
+package preprocessor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Logs per-file warnings of the same kind at most {@code burst} times per window, and aggregates the rest into a
+ * count that is reported with the next warning of that kind or by {@link #reportSuppressed()}.
+ */
+public class RateLimitedLogger {
+
+    private static final StackWalker stackWalker = StackWalker.getInstance();
+
+    private final Logger logger;
+    private final int burst;
+    private final long windowMillis;
+    private final Map<String, Window> windows = new ConcurrentHashMap<>();
+
+    private static class Window {
+        long start;
+        int logged;
+        long suppressed;
+    }
+
+    public RateLimitedLogger(Logger logger, int burst, long windowMillis) {
+        this.logger = logger;
+        this.burst = burst;
+        this.windowMillis = windowMillis;
+    }
+
+    public Logger getLogger() {
+        return logger;
+    }
+
+    /**
+     * Logs {@code kind + ": " + detail} unless too many warnings of this kind were logged recently.
+     */
+    public void warning(String kind, Object detail) {
+        if (!logger.isLoggable(Level.WARNING)) {
+            return;
+        }
+        Window window = windows.computeIfAbsent(kind, k -> new Window());
+        long suppressed;
+        synchronized (window) {
+            long now = System.currentTimeMillis();
+            if (now - window.start >= windowMillis) {
+                window.start = now;
+                window.logged = 0;
+            }
+            if (window.logged >= burst) {
+                window.suppressed++;
+                return;
+            }
+            window.logged++;
+            suppressed = window.suppressed;
+            window.suppressed = 0;
+        }
+        // ログのカテゴリがこのクラスではなく呼び出し元になるように
+        StackWalker.StackFrame caller = stackWalker.walk(frames -> frames.skip(1).findFirst()).orElseThrow();
+        logger.logp(Level.WARNING, caller.getClassName(), caller.getMethodName(),
+                kind + ": " + detail + (suppressed > 0 ? " (" + suppressed + " similar warnings suppressed)" : ""));
+    }
+
+    public void reportSuppressed() {
+        for (Map.Entry<String, Window> en : windows.entrySet()) {
+            long suppressed;
+            synchronized (en.getValue()) {
+                suppressed = en.getValue().suppressed;
+                en.getValue().suppressed = 0;
+            }
+            if (suppressed > 0) {
+                logger.warning(suppressed + " more warnings suppressed: " + en.getKey());
+            }
+        }
+    }
+}
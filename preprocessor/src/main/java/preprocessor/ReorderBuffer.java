@@ -0,0 +1,76 @@
+package preprocessor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Maps the elements of a stream on an executor while handing the results on in input order, so that parallel work
+ * still produces output in a canonical order. Results that finish early wait in a window of at most
+ * {@code window} elements; the next element is only submitted once the oldest one has been handed on, which bounds
+ * the memory held by the buffer.
+ */
+public class ReorderBuffer<T, R> implements Iterator<R> {
+
+    private final Iterator<T> input;
+    private final Function<T, R> function;
+    private final Executor executor;
+    private final int window;
+    private final Deque<CompletableFuture<R>> pending = new ArrayDeque<>();
+
+    private ReorderBuffer(Iterator<T> input, Function<T, R> function, Executor executor, int window) {
+        this.input = input;
+        this.function = function;
+        this.executor = executor;
+        this.window = window;
+    }
+
+    public static <T, R> Stream<R> map(Stream<T> input, Function<T, R> function, Executor executor, int window) {
+        ReorderBuffer<T, R> buffer = new ReorderBuffer<>(input.iterator(), function, executor, Math.max(1, window));
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(buffer, Spliterator.ORDERED), false)
+                .onClose(buffer::cancel)
+                .onClose(input::close);
+    }
+
+    private void fill() {
+        while (pending.size() < window && input.hasNext()) {
+            T element = input.next();
+            pending.add(CompletableFuture.supplyAsync(() -> function.apply(element), executor));
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        fill();
+        return !pending.isEmpty();
+    }
+
+    @Override
+    public R next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        try {
+            return pending.poll().join();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+        }
+    }
+
+    private void cancel() {
+        // 実行中のものは止めずに結果を捨てる
+        for (CompletableFuture<R> future : pending) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+}
@@ -0,0 +1,119 @@
+package preprocessor;
+
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.MethodDeclaration;
+import com.github.javaparser.ast.nodeTypes.NodeWithSimpleName;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deterministic sampling of a dataset. An input is kept if a stable hash of its key (data type, project,
+ * path relative to the project and method signature), mapped to [0, 1), is below the sampling rate, so the
+ * same subset is chosen on every run and machine without any state.
+ */
+public class Sampler {
+
+    public enum Level {
+        PROJECT,
+        FILE,
+        METHOD
+    }
+
+    private final double rate;
+    private final Level level;
+    private final long seed;
+    private final int maxMethodsPerProject;
+    private final String prefix;
+
+    public Sampler(double rate, Level level, long seed, int maxMethodsPerProject, String prefix) {
+        this.rate = rate;
+        this.level = level;
+        this.seed = seed;
+        this.maxMethodsPerProject = maxMethodsPerProject;
+        this.prefix = prefix;
+    }
+
+    public Sampler forProject(String projectName) {
+        return new Sampler(rate, level, seed, maxMethodsPerProject, prefix + projectName + "/");
+    }
+
+    public boolean acceptProject() {
+        return level != Level.PROJECT || accept(prefix);
+    }
+
+    public boolean acceptFile(String relativePath) {
+        return level != Level.FILE || accept(prefix + relativePath);
+    }
+
+    public boolean acceptMethod(String relativePath, MethodDeclaration method) {
+        return level != Level.METHOD || accept(prefix + relativePath + "#" + qualifiedSignature(method));
+    }
+
+    public int getMaxMethodsPerProject() {
+        return maxMethodsPerProject;
+    }
+
+    private boolean accept(String key) {
+        return rate >= 1 || uniform(seed, key) < rate;
+    }
+
+    private static String qualifiedSignature(MethodDeclaration method) {
+        StringBuilder sb = new StringBuilder(method.getSignature().asString());
+        Node node = method.getParentNode().orElse(null);
+        while (node != null) {
+            if (node instanceof NodeWithSimpleName) {
+                sb.insert(0, ((NodeWithSimpleName<?>) node).getNameAsString() + ".");
+            }
+            node = node.getParentNode().orElse(null);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * {@link #hash} mapped to [0, 1).
+     */
+    static double uniform(long seed, String key) {
+        return (hash(seed, key) >>> 11) * 0x1.0p-53;
+    }
+
+    /**
+     * FNV-1a over the UTF-8 bytes of the key followed by the splitmix64 finalizer.
+     */
+    static long hash(long seed, String key) {
+        long h = 0xcbf29ce484222325L ^ seed;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        h ^= h >>> 30;
+        h *= 0xbf58476d1ce4e5b9L;
+        h ^= h >>> 27;
+        h *= 0x94d049bb133111ebL;
+        h ^= h >>> 31;
+        return h;
+    }
+
+    /**
+     * Parses "0.05" or "training=0.01,validation=0.1" (or both mixed, where the bare number is the default).
+     * The rate of data types without an entry is stored under the empty key.
+     */
+    public static Map<String, Double> parseRates(String spec) {
+        Map<String, Double> rates = new HashMap<>();
+        rates.put("", 1.0);
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            int eq = part.indexOf('=');
+            if (eq < 0) {
+                rates.put("", Double.parseDouble(part));
+            } else {
+                rates.put(part.substring(0, eq).trim(), Double.parseDouble(part.substring(eq + 1)));
+            }
+        }
+        return rates;
+    }
+}
@@ -0,0 +1,43 @@
+package preprocessor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * What one shard of an extraction run wrote, saved as {@code manifest-<index>-of-<count>.json} in its output
+ * directory and read back by {@link ShardMergeTask}. A merged dataset is described as shard 0 of 1.
+ */
+public class ShardManifest {
+
+    private static final ObjectMapper mapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    public String dataset;
+    public int shardIndex;
+    public int shardCount;
+    public List<Project> projects = new ArrayList<>();
+
+    public static class Project {
+        public String dataType;
+        public String name;
+        public long sourceBytes;
+        public long graphs;
+        public boolean complete;
+
+        public String key() {
+            return dataType + "/" + name;
+        }
+    }
+
+    public static ShardManifest read(Path path) throws IOException {
+        return mapper.readValue(path.toFile(), ShardManifest.class);
+    }
+
+    public void write(Path path) throws IOException {
+        mapper.writeValue(path.toFile(), this);
+    }
+}
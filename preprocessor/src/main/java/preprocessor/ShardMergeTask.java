@@ -0,0 +1,144 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Combines the output directories of the shards of a {@code --shard_count} run into one dataset: the project
+ * directories are linked (or copied) into the output directory, the per-project histograms are summed into
+ * {@code <dataType>.vocab} and {@code <dataType>.target}, and the manifests are merged into one.
+ */
+public class ShardMergeTask implements Runnable {
+
+    private static final Logger logger = Logger.getLogger(ShardMergeTask.class.getName());
+
+    private final List<Path> shardDirs;
+    private final Path outputDir;
+    private boolean failed = false;
+
+    public ShardMergeTask(List<Path> shardDirs, Path outputDir) {
+        this.shardDirs = shardDirs;
+        this.outputDir = outputDir;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Files.createDirectories(outputDir);
+            ShardManifest merged = new ShardManifest();
+            merged.shardIndex = 0;
+            merged.shardCount = 1;
+            Set<String> mergedKeys = new HashSet<>();
+            Map<Integer, Set<Integer>> seenShards = new TreeMap<>();
+            Map<String, WordHistogram> vocabHists = new TreeMap<>();
+            Map<String, WordHistogram> targetHists = new TreeMap<>();
+
+            for (Path shardDir : shardDirs) {
+                for (Path manifestPath : listManifests(shardDir)) {
+                    ShardManifest manifest = ShardManifest.read(manifestPath);
+                    if (!seenShards.computeIfAbsent(manifest.shardCount, k -> new TreeSet<>()).add(manifest.shardIndex)) {
+                        logger.warning("shard " + manifest.shardIndex + " of " + manifest.shardCount + " is given twice: " + manifestPath);
+                        continue;
+                    }
+                    merged.dataset = manifest.dataset;
+                    for (ShardManifest.Project project : manifest.projects) {
+                        if (!mergedKeys.add(project.key())) {
+                            logger.warning("project is in more than one shard, keeping the first: " + project.key());
+                            continue;
+                        }
+                        Path src = shardDir.resolve(project.dataType).resolve(project.name);
+                        Path dst = outputDir.resolve(project.dataType).resolve(project.name);
+                        if (Files.isDirectory(src)) {
+                            linkOrCopyTree(src, dst);
+                            countIfExists(vocabHists.computeIfAbsent(project.dataType, k -> new WordHistogram()),
+                                    src.resolve(project.name + ".vocab"));
+                            countIfExists(targetHists.computeIfAbsent(project.dataType, k -> new WordHistogram()),
+                                    src.resolve(project.name + ".target"));
+                        }
+                        merged.projects.add(project);
+                    }
+                    logger.info("merged " + manifest.projects.size() + " projects of shard " + manifest.shardIndex
+                            + " of " + manifest.shardCount + " from " + shardDir);
+                }
+            }
+
+            for (Map.Entry<Integer, Set<Integer>> en : seenShards.entrySet()) {
+                if (en.getValue().size() < en.getKey()) {
+                    logger.warning("only " + en.getValue() + " of " + en.getKey() + " shards were merged");
+                }
+            }
+            if (seenShards.size() > 1) {
+                logger.warning("shards of different shard counts were merged: " + seenShards.keySet());
+            }
+            for (Map.Entry<String, WordHistogram> en : vocabHists.entrySet()) {
+                write(outputDir.resolve(en.getKey() + ".vocab"), en.getValue());
+                write(outputDir.resolve(en.getKey() + ".target"), targetHists.get(en.getKey()));
+            }
+            merged.projects.sort(Comparator.comparing(ShardManifest.Project::key));
+            merged.write(outputDir.resolve(new ShardPartitioner(0, 1).getManifestName()));
+            logger.info("merged " + merged.projects.size() + " projects into " + outputDir);
+        } catch (IOException | UncheckedIOException e) {
+            logger.log(Level.SEVERE, "failed to merge shards into " + outputDir, e);
+            failed = true;
+        }
+    }
+
+    public boolean hasFailed() {
+        return failed;
+    }
+
+    private static List<Path> listManifests(Path shardDir) throws IOException {
+        List<Path> manifests = new ArrayList<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(shardDir, "manifest-*-of-*.json")) {
+            paths.forEach(manifests::add);
+        }
+        if (manifests.isEmpty()) {
+            logger.warning("no manifest found in " + shardDir);
+        }
+        Collections.sort(manifests);
+        return manifests;
+    }
+
+    /**
+     * Hard links are tried first so that merging shards on the same file system does not copy the graphs.
+     */
+    private static void linkOrCopyTree(Path src, Path dst) throws IOException {
+        if (Files.exists(dst) && Files.isSameFile(src, dst)) {
+            return;  // shard の出力先と同じディレクトリに merge する場合
+        }
+        try (Stream<Path> paths = Files.walk(src)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Path target = dst.resolve(src.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(target);
+                    continue;
+                }
+                Files.deleteIfExists(target);
+                try {
+                    Files.createLink(target, path);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(path, target);
+                }
+            }
+        }
+    }
+
+    private static void countIfExists(WordHistogram hist, Path path) throws IOException {
+        if (Files.exists(path)) {
+            hist.countAll(path);
+        }
+    }
+
+    private static void write(Path path, WordHistogram hist) throws IOException {
+        try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            writer.write(hist.toString());
+        }
+    }
+}
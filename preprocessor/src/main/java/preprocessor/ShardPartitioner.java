@@ -0,0 +1,78 @@
+package preprocessor;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Deterministic split of a dataset's projects between independent processes. Every process computes the same
+ * assignment from the same listing, so shards need no coordination: projects are dealt largest first to the
+ * least loaded shard (LPT), with ties broken by a stable hash of the project key.
+ */
+public class ShardPartitioner {
+
+    private final int shardIndex;
+    private final int shardCount;
+
+    public ShardPartitioner(int shardIndex, int shardCount) {
+        if (shardCount < 1 || shardIndex < 0 || shardIndex >= shardCount) {
+            throw new IllegalArgumentException("invalid shard " + shardIndex + " of " + shardCount);
+        }
+        this.shardIndex = shardIndex;
+        this.shardCount = shardCount;
+    }
+
+    public int getShardIndex() {
+        return shardIndex;
+    }
+
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    public boolean isSharded() {
+        return shardCount > 1;
+    }
+
+    /**
+     * Returns the projects of this shard, balancing the estimated sizes over all shards.
+     */
+    public <T> List<T> select(List<T> projects, Function<T, String> key, ToLongFunction<T> estimatedSize) {
+        if (!isSharded()) {
+            return projects;
+        }
+        List<T> sorted = new ArrayList<>(projects);
+        sorted.sort(Comparator.comparingLong(estimatedSize).reversed()
+                .thenComparingDouble(p -> Sampler.uniform(0, key.apply(p)))
+                .thenComparing(key));
+
+        // (負荷, shard index) が最小の shard に割り当てる
+        long[] loads = new long[shardCount];
+        PriorityQueue<Integer> shards = new PriorityQueue<>(
+                Comparator.<Integer>comparingLong(i -> loads[i]).thenComparingInt(i -> i));
+        for (int i = 0; i < shardCount; i++) {
+            shards.add(i);
+        }
+        List<T> selected = new ArrayList<>();
+        for (T project : sorted) {
+            int shard = shards.poll();
+            loads[shard] += Math.max(1, estimatedSize.applyAsLong(project));
+            shards.add(shard);
+            if (shard == shardIndex) {
+                selected.add(project);
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * Assignment by hash alone, for inputs that are streamed and cannot be listed up front.
+     */
+    public boolean accept(String key) {
+        return !isSharded() || (int) (Sampler.uniform(0, key) * shardCount) == shardIndex;
+    }
+
+    public String getManifestName() {
+        return "manifest-" + shardIndex + "-of-" + shardCount + ".json";
+    }
+}
@@ -0,0 +1,71 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+public class SourceFile {
+
+    private final Path path;
+    private final String relativePath;
+    private final byte[] content;
+
+    public SourceFile(Path path) {
+        this(path, path.toString(), null);
+    }
+
+    public SourceFile(Path path, String relativePath) {
+        this(path, relativePath, null);
+    }
+
+    public SourceFile(Path path, String relativePath, byte[] content) {
+        this.path = path;
+        this.relativePath = relativePath;
+        this.content = content;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Path of the file relative to its project root, with '/' as separator.
+     */
+    public String getRelativePath() {
+        return relativePath;
+    }
+
+    public SourceFile withContent(byte[] content) {
+        return new SourceFile(path, relativePath, content);
+    }
+
+    public boolean isLoaded() {
+        return content != null;
+    }
+
+    public byte[] getContent() throws IOException {
+        if (content != null) {
+            return content;
+        }
+        return Files.readAllBytes(path);
+    }
+
+    /**
+     * Size of the content held in memory; only valid if {@link #isLoaded()}.
+     */
+    public int getLoadedSize() {
+        return content.length;
+    }
+
+    public long getSize() throws IOException {
+        if (content != null) {
+            return content.length;
+        }
+        return Files.size(path);
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package preprocessor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded memo of raw token text to its normalised subtoken label, owned by a {@link GraphExtractor} and shared by
+ * the threads using it. The entries are spread over lock-striped segments, each evicting its least recently used
+ * entry when full. Texts longer than {@link #MAX_KEY_LENGTH}, mostly string literals, are split without caching:
+ * they rarely repeat, and would take the room of many identifiers.
+ */
+public class SubtokenCache {
+
+    public static final int MAX_KEY_LENGTH = 64;
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public SubtokenCache(int capacity) {
+        this.segments = new Segment[capacity > 0 ? SEGMENTS : 0];
+        for (int i = 0; i < segments.length; i++) {
+            segments[i] = new Segment(Math.max(1, capacity / SEGMENTS));
+        }
+    }
+
+    /**
+     * Returns {@link NodeLabelUtil#splitToSubtokens(String)} of the text, from the cache if possible.
+     */
+    public String split(String text) {
+        return get(text, NodeLabelUtil::splitToSubtokens);
+    }
+
+    public String get(String key, Function<String, String> compute) {
+        if (segments.length == 0 || key.length() > MAX_KEY_LENGTH) {
+            misses.increment();
+            return compute.apply(key);
+        }
+        int h = key.hashCode();
+        Segment segment = segments[(h ^ (h >>> 16)) & (SEGMENTS - 1)];
+        String value;
+        synchronized (segment) {
+            value = segment.get(key);
+        }
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = compute.apply(key);  // 計算はロックの外で行う。同時に計算されても結果は同じ
+        synchronized (segment) {
+            segment.put(key, value);
+        }
+        return value;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public double getHitRate() {
+        long hit = getHits();
+        long total = hit + getMisses();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    public String stats() {
+        return stats(getHits(), getMisses());
+    }
+
+    public static String stats(long hits, long misses) {
+        long total = hits + misses;
+        double rate = total == 0 ? 0 : (double) hits / total;
+        return String.format("subtoken cache: %d hits, %d misses (hit rate %.1f%%)", hits, misses, rate * 100);
+    }
+
+    private static class Segment extends LinkedHashMap<String, String> {
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+
+        Segment(int maxEntries) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+            return size() > maxEntries;
+        }
+    }
+}
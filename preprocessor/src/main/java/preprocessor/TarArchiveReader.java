@@ -0,0 +1,234 @@
+package preprocessor;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Minimal streaming reader of (optionally gzipped) tar archives.
+ * Supports ustar names with prefix, GNU long names and the path record of pax extended headers.
+ */
+public class TarArchiveReader implements Closeable {
+
+    private static final int BLOCK_SIZE = 512;
+
+    private final InputStream in;
+    private final byte[] header = new byte[BLOCK_SIZE];
+    private long remaining = 0;  // 現在のエントリの未読バイト数
+    private long padding = 0;
+
+    public static class Entry {
+        private final String name;
+        private final long size;
+        private final boolean file;
+
+        Entry(String name, long size, boolean file) {
+            this.name = name;
+            this.size = size;
+            this.file = file;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public boolean isFile() {
+            return file;
+        }
+    }
+
+    public TarArchiveReader(Path archive) throws IOException {
+        InputStream raw = new BufferedInputStream(Files.newInputStream(archive), 1 << 16);
+        if (archive.getFileName().toString().endsWith(".tar")) {
+            this.in = raw;
+        } else {
+            this.in = new BufferedInputStream(new GZIPInputStream(raw, 1 << 16), 1 << 16);
+        }
+    }
+
+    /**
+     * Advances to the next file or directory entry, skipping the unread content of the current one.
+     * Returns null at the end of the archive.
+     */
+    public Entry next() throws IOException {
+        skipFully(remaining + padding);
+        remaining = 0;
+        padding = 0;
+
+        String longName = null;
+        while (true) {
+            if (!readBlock(header)) {
+                return null;
+            }
+            if (isZeroBlock(header)) {
+                return null;
+            }
+            long size = parseNumber(header, 124, 12);
+            char type = (char) header[156];
+            if (type == 'L' || type == 'x') {
+                byte[] data = readData(size);
+                if (type == 'L') {
+                    longName = cString(data, 0, data.length);
+                } else {
+                    String path = paxPath(data);
+                    if (path != null) {
+                        longName = path;
+                    }
+                }
+                continue;
+            }
+            if (type == 'g') {
+                readData(size);
+                continue;
+            }
+            String name = longName != null ? longName : headerName();
+            boolean isFile = type == '0' || type == '\0' || type == '7';
+            remaining = isFile ? size : 0;
+            padding = isFile ? paddingOf(size) : paddingOf(size) + size;
+            return new Entry(name, size, isFile);
+        }
+    }
+
+    /**
+     * Reads the whole content of the current entry.
+     */
+    public byte[] readContent() throws IOException {
+        if (remaining > Integer.MAX_VALUE) {
+            throw new IOException("tar entry is too large: " + remaining + " bytes");
+        }
+        byte[] data = new byte[(int) remaining];
+        readFully(data);
+        remaining = 0;
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private byte[] readData(long size) throws IOException {
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("tar header is too large: " + size + " bytes");
+        }
+        byte[] data = new byte[(int) size];
+        readFully(data);
+        skipFully(paddingOf(size));
+        return data;
+    }
+
+    private String headerName() {
+        String name = cString(header, 0, 100);
+        if (cString(header, 257, 5).equals("ustar")) {
+            String prefix = cString(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                name = prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    private static String paxPath(byte[] data) {
+        // "<length> <key>=<value>\n" の繰り返し
+        int pos = 0;
+        while (pos < data.length) {
+            int space = pos;
+            while (space < data.length && data[space] != ' ') {
+                space++;
+            }
+            if (space >= data.length) {
+                break;
+            }
+            int length = Integer.parseInt(new String(data, pos, space - pos, StandardCharsets.US_ASCII));
+            if (length <= 0) {
+                break;
+            }
+            String record = new String(data, space + 1, pos + length - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith("path=")) {
+                return record.substring("path=".length());
+            }
+            pos += length;
+        }
+        return null;
+    }
+
+    private static long paddingOf(long size) {
+        return (BLOCK_SIZE - size % BLOCK_SIZE) % BLOCK_SIZE;
+    }
+
+    private static long parseNumber(byte[] buf, int offset, int length) {
+        if ((buf[offset] & 0x80) != 0) {
+            // GNU base-256 encoding
+            long value = buf[offset] & 0x7f;
+            for (int i = offset + 1; i < offset + length; i++) {
+                value = (value << 8) | (buf[i] & 0xff);
+            }
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = buf[i];
+            if (b == 0 || b == ' ') {
+                if (value != 0) {
+                    break;
+                }
+                continue;
+            }
+            value = value * 8 + (b - '0');
+        }
+        return value;
+    }
+
+    private static String cString(byte[] buf, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && buf[end] != 0) {
+            end++;
+        }
+        return new String(buf, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean readBlock(byte[] block) throws IOException {
+        int read = in.readNBytes(block, 0, block.length);
+        if (read == 0) {
+            return false;
+        }
+        if (read < block.length) {
+            throw new EOFException("truncated tar archive");
+        }
+        return true;
+    }
+
+    private void readFully(byte[] data) throws IOException {
+        if (in.readNBytes(data, 0, data.length) < data.length) {
+            throw new EOFException("truncated tar archive");
+        }
+    }
+
+    private void skipFully(long n) throws IOException {
+        while (n > 0) {
+            long skipped = in.skip(n);
+            if (skipped <= 0) {
+                if (in.read() < 0) {
+                    throw new EOFException("truncated tar archive");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+}
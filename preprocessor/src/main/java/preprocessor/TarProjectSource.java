@@ -0,0 +1,82 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * A whole tar archive as one project. Files are decompressed lazily while the stream is consumed.
+ */
+public class TarProjectSource implements ProjectSource {
+
+    private final Path archive;
+    private final String archiveRoot;
+
+    public TarProjectSource(Path archive, String archiveRoot) {
+        this.archive = archive;
+        this.archiveRoot = archiveRoot;
+    }
+
+    @Override
+    public String getName() {
+        return Archives.baseName(archive);
+    }
+
+    @Override
+    public Stream<SourceFile> files() throws IOException {
+        TarArchiveReader reader = new TarArchiveReader(archive);
+        Iterator<SourceFile> it = new Iterator<>() {
+            private SourceFile nxt = advance();
+
+            private SourceFile advance() {
+                try {
+                    TarArchiveReader.Entry entry;
+                    while ((entry = reader.next()) != null) {
+                        String name = Archives.relativize(entry.getName(), archiveRoot);
+                        if (entry.isFile() && name != null && name.endsWith(".java")) {
+                            return new SourceFile(Paths.get(name), name, reader.readContent());
+                        }
+                    }
+                    return null;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return nxt != null;
+            }
+
+            @Override
+            public SourceFile next() {
+                if (nxt == null) {
+                    throw new NoSuchElementException();
+                }
+                SourceFile current = nxt;
+                nxt = advance();
+                return current;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        reader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+
+    @Override
+    public String toString() {
+        return archive.toString();
+    }
+}
@@ -0,0 +1,43 @@
+package preprocessor;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+
+/**
+ * Writes all graphs into one file, separated by blank lines, with a {@link GraphIndexWriter} index alongside.
+ */
+public class TextGraphWriter implements GraphWriter {
+
+    private final Path graphFile;
+    private final GraphIndexWriter index;
+    private OutputStream out;
+    private long offset = 0;
+
+    public TextGraphWriter(Path graphFile) {
+        this.graphFile = graphFile;
+        this.index = new GraphIndexWriter(graphFile);
+    }
+
+    @Override
+    public void write(Graph graph) throws IOException {
+        if (out == null) {
+            out = new BufferedOutputStream(new FileOutputStream(graphFile.toFile()), 1 << 16);
+        }
+        GraphSerializer serializer = GraphSerializer.get();
+        int length = serializer.serialize(graph);
+        index.add(offset, graph);
+        serializer.writeTo(out);
+        offset += length;
+    }
+
+    @Override
+    public void close() throws IOException {
+        index.close();
+        if (out != null) {
+            out.close();
+        }
+    }
+}
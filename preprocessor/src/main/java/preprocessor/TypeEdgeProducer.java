@@ -0,0 +1,65 @@
+package preprocessor;
+
+import com.github.javaparser.Position;
+import com.github.javaparser.Range;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.FieldAccessExpr;
+import com.github.javaparser.ast.expr.MethodCallExpr;
+import com.github.javaparser.ast.expr.NameExpr;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.*;
+
+import static preprocessor.Graph.EdgeType;
+import static preprocessor.Graph.Vertex;
+import static preprocessor.Graph.VertexType;
+
+/**
+ * HAS_TYPE edges to one TYPE vertex per distinct type, resolved with a {@link TypeResolutionContext}.
+ */
+public class TypeEdgeProducer implements EdgeProducer {
+
+    private final TypeResolutionContext typeContext;
+    private final SubtokenCache subtokens;
+    private final List<Pair<Node, Vertex>> typedNodes = new ArrayList<>();
+
+    public TypeEdgeProducer(TypeResolutionContext typeContext, SubtokenCache subtokens) {
+        this.typeContext = typeContext;
+        this.subtokens = subtokens;
+    }
+
+    @Override
+    public void visit(GraphBuilder graph, Node node, Vertex vertex, Vertex parent) {
+        // 宣言された型 (Prm, VD) と推論された型 (Nm, Cal, Fld)
+        if (node instanceof Parameter || node instanceof VariableDeclarator || node instanceof NameExpr
+                || node instanceof MethodCallExpr || node instanceof FieldAccessExpr) {
+            typedNodes.add(Pair.of(node, vertex));
+        }
+    }
+
+    @Override
+    public void finish(GraphBuilder graph) {
+        // TYPE 頂点の順序がソースコード中の出現順になるように、解決はソースコード順で行う
+        typedNodes.sort(Comparator.comparing((Pair<Node, Vertex> p) -> p.getRight().getRange(),
+                Comparator.nullsLast(Comparator.comparing((Range r) -> r.begin)
+                        .thenComparing(r -> r.end, Comparator.<Position>reverseOrder()))));
+
+        // 型ごとに 1 つの TYPE 頂点にまとめる
+        Map<String, Vertex> typeVertices = new HashMap<>();
+        long deadline = typeContext.newDeadline();
+        for (Pair<Node, Vertex> typedNode : typedNodes) {
+            String typeName = typeContext.resolveTypeName(typedNode.getLeft(), deadline);
+            if (typeName == null) {
+                continue;
+            }
+            Vertex typeVertex = typeVertices.get(typeName);
+            if (typeVertex == null) {
+                typeVertex = graph.addVertex(subtokens.split(typeName), null, VertexType.TYPE);
+                typeVertices.put(typeName, typeVertex);
+            }
+            graph.addEdge(typedNode.getRight(), typeVertex, EdgeType.HAS_TYPE);
+        }
+    }
+}
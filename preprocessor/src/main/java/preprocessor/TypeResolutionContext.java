@@ -0,0 +1,235 @@
+package preprocessor;
+
+import com.github.javaparser.JavaParser;
+import com.github.javaparser.ParserConfiguration;
+import com.github.javaparser.ast.CompilationUnit;
+import com.github.javaparser.ast.Node;
+import com.github.javaparser.ast.PackageDeclaration;
+import com.github.javaparser.ast.body.Parameter;
+import com.github.javaparser.ast.body.VariableDeclarator;
+import com.github.javaparser.ast.expr.Expression;
+import com.github.javaparser.resolution.declarations.ResolvedReferenceTypeDeclaration;
+import com.github.javaparser.resolution.types.ResolvedType;
+import com.github.javaparser.symbolsolver.JavaSymbolSolver;
+import com.github.javaparser.symbolsolver.model.resolution.SymbolReference;
+import com.github.javaparser.symbolsolver.model.resolution.TypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.CombinedTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.JavaParserTypeSolver;
+import com.github.javaparser.symbolsolver.resolution.typesolvers.ReflectionTypeSolver;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Type resolution for one project. All files of the project share one {@link CombinedTypeSolver}
+ * (JRE reflection plus the project's own source roots, added as they are discovered) behind a memoising root,
+ * so that a type looked up once is never searched for again. Source roots are only known for projects on a file
+ * system; the types of other projects are resolved against the JRE alone. A context belongs to the worker
+ * extracting its project and is not thread-safe.
+ */
+public class TypeResolutionContext {
+
+    private static final int MAX_LOOKUP_DEPTH = 64;
+
+    private final Path projectRoot;
+    private final CombinedTypeSolver combinedSolver;
+    private final MemoizingTypeSolver rootSolver;
+    private final Set<Path> sourceRoots = new HashSet<>();
+    private final JavaParser parser;
+    private final long budgetNanos;
+
+    private long deadline = Long.MAX_VALUE;
+    private int lookupDepth = 0;
+    private boolean exceeded = false;
+
+    private final LongAdder resolved = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder guarded = new LongAdder();
+
+    public TypeResolutionContext(long budgetMillisPerMethod) {
+        this(budgetMillisPerMethod, null);
+    }
+
+    /**
+     * A context for a project whose files are under {@code projectRoot}, or null if they are not on a file system.
+     */
+    public TypeResolutionContext(long budgetMillisPerMethod, Path projectRoot) {
+        this.projectRoot = projectRoot;
+        this.combinedSolver = new CombinedTypeSolver(new ReflectionTypeSolver());
+        this.rootSolver = new MemoizingTypeSolver(combinedSolver);
+        this.combinedSolver.setParent(rootSolver);  // 子の solver からの問い合わせも memo を経由させる
+        this.budgetNanos = budgetMillisPerMethod * 1_000_000;
+        this.parser = new JavaParser(new ParserConfiguration().setSymbolResolver(new JavaSymbolSolver(rootSolver)));
+    }
+
+    public JavaParser getParser() {
+        return parser;
+    }
+
+    /**
+     * Adds the source root of a parsed file (its directory minus the package path) to the type solver, if the
+     * project is on a file system and the root lies within it.
+     */
+    public void registerSourceRoot(SourceFile file, CompilationUnit cu) {
+        if (projectRoot == null) {
+            return;
+        }
+        Path root = projectRoot.resolve(file.getRelativePath()).getParent();
+        String packageName = cu.getPackageDeclaration().map(PackageDeclaration::getNameAsString).orElse("");
+        if (!packageName.isEmpty()) {
+            String[] parts = packageName.split("\\.");
+            for (int i = parts.length - 1; i >= 0; i--) {
+                if (root == null || root.getFileName() == null || !root.getFileName().toString().equals(parts[i])) {
+                    return;
+                }
+                root = root.getParent();
+            }
+        }
+        if (root == null || !root.startsWith(projectRoot) || !sourceRoots.add(root) || !Files.isDirectory(root)) {
+            return;
+        }
+        combinedSolver.add(new JavaParserTypeSolver(root));
+        rootSolver.clearUnsolved();
+    }
+
+    public long newDeadline() {
+        return System.nanoTime() + budgetNanos;
+    }
+
+    /**
+     * Returns the simple name of the declared type of a parameter or variable, or of the inferred type of an
+     * expression. Returns null if the type cannot be resolved, or if a type lookup made while resolving it nested
+     * too deep or came after the method's deadline; such a resolution is abandoned and nothing it looked up is
+     * memoised.
+     */
+    public String resolveTypeName(Node node, long deadline) {
+        if (System.nanoTime() > deadline) {
+            guarded.increment();
+            return null;
+        }
+        this.deadline = deadline;
+        this.lookupDepth = 0;
+        this.exceeded = false;
+        try {
+            ResolvedType type;
+            if (node instanceof Parameter) {
+                type = ((Parameter) node).getType().resolve();
+            } else if (node instanceof VariableDeclarator) {
+                type = ((VariableDeclarator) node).getType().resolve();
+            } else if (node instanceof Expression) {
+                type = ((Expression) node).calculateResolvedType();
+            } else {
+                return null;
+            }
+            if (exceeded) {  // symbol solver が途中の例外を握りつぶして結果を返すことがある
+                guarded.increment();
+                return null;
+            }
+            resolved.increment();
+            return typeName(type);
+        } catch (LookupBudgetExceeded | StackOverflowError e) {  // memo は解決し終えた型しか持たないので壊れない
+            guarded.increment();
+            return null;
+        } catch (RuntimeException e) {
+            if (exceeded) {
+                guarded.increment();
+            } else {
+                failed.increment();
+            }
+            return null;
+        } finally {
+            this.deadline = Long.MAX_VALUE;
+        }
+    }
+
+    private void enterLookup() {
+        if (exceeded || ++lookupDepth > MAX_LOOKUP_DEPTH || System.nanoTime() > deadline) {
+            exceeded = true;
+            throw new LookupBudgetExceeded();
+        }
+    }
+
+    private void exitLookup() {
+        lookupDepth--;
+    }
+
+    public String stats() {
+        return String.format("type resolution: %d resolved, %d failed, %d guarded, %d source roots, %d memoised types",
+                resolved.sum(), failed.sum(), guarded.sum(), sourceRoots.size(), rootSolver.size());
+    }
+
+    static String typeName(ResolvedType type) {
+        if (type.isArray()) {
+            return typeName(type.asArrayType().getComponentType()) + " array";
+        }
+        if (type.isReferenceType()) {
+            String qualified = type.asReferenceType().getQualifiedName();
+            return qualified.substring(qualified.lastIndexOf('.') + 1);
+        }
+        return type.describe();
+    }
+
+    private static class LookupBudgetExceeded extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        LookupBudgetExceeded() {
+            super("type lookup too deep or past the deadline", null, false, false);
+        }
+    }
+
+    /**
+     * Memoises the lookups of the delegate, and checks the depth and deadline of the current resolution before
+     * each lookup that is not memoised yet.
+     */
+    private class MemoizingTypeSolver implements TypeSolver {
+
+        private final TypeSolver delegate;
+        private final Map<String, SymbolReference<ResolvedReferenceTypeDeclaration>> memo = new HashMap<>();
+        private TypeSolver parent;
+
+        MemoizingTypeSolver(TypeSolver delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public TypeSolver getParent() {
+            return parent;
+        }
+
+        @Override
+        public void setParent(TypeSolver parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public SymbolReference<ResolvedReferenceTypeDeclaration> tryToSolveType(String name) {
+            SymbolReference<ResolvedReferenceTypeDeclaration> ref = memo.get(name);
+            if (ref != null) {
+                return ref;
+            }
+            enterLookup();
+            try {
+                ref = delegate.tryToSolveType(name);
+            } finally {
+                exitLookup();
+            }
+            if (!exceeded) {
+                memo.put(name, ref);
+            }
+            return ref;
+        }
+
+        void clearUnsolved() {
+            memo.values().removeIf(ref -> !ref.isSolved());
+        }
+
+        int size() {
+            return memo.size();
+        }
+    }
+}
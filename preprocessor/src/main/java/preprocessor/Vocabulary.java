@@ -0,0 +1,48 @@
+package preprocessor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Word to id mapping laid out like {@code data.Vocabulary} of the trainer: 0 is {@code <unk>}, 1 is {@code <pad>}
+ * and the words of the vocabulary file follow in file order. The file holds one word per line; anything after the
+ * first space (e.g. the counts of a .vocab histogram) is ignored.
+ */
+public class Vocabulary {
+
+    public static final int UNK = 0;
+    public static final int PAD = 1;
+
+    private final Map<String, Integer> word2idx = new HashMap<>();
+
+    public Vocabulary(List<String> words) {
+        for (String word : words) {
+            word2idx.putIfAbsent(word, word2idx.size() + 2);
+        }
+    }
+
+    public static Vocabulary load(Path path) {
+        try {
+            List<String> lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+            lines.replaceAll(line -> line.contains(" ") ? line.substring(0, line.indexOf(' ')) : line);
+            lines.removeIf(String::isEmpty);
+            return new Vocabulary(lines);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int lookupIdx(String word) {
+        return word2idx.getOrDefault(word, UNK);
+    }
+
+    public int size() {
+        return word2idx.size() + 2;
+    }
+}
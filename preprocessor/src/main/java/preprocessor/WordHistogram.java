@@ -1,21 +1,48 @@
 package preprocessor;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.StringJoiner;
+import java.util.TreeMap;
 
 public class WordHistogram {
     private final Map<String, Long> hist = new HashMap<>();
 
     public void count(String word) {
-        long count = hist.getOrDefault(word, 0L);
-        hist.put(word, count + 1);
+        count(word, 1);
     }
 
+    public void count(String word, long n) {
+        hist.merge(word, n, Long::sum);
+    }
+
+    /**
+     * Adds the counts of a histogram written by {@link #toString()}.
+     */
+    public void countAll(Path path) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int sep = line.lastIndexOf(' ');
+                if (sep >= 0) {
+                    count(line.substring(0, sep), Long.parseLong(line.substring(sep + 1)));
+                }
+            }
+        }
+    }
+
+    /**
+     * One "word count" line per word, sorted by word so that the text does not depend on the order of the counts.
+     */
     @Override
     public String toString() {
         StringJoiner joiner = new StringJoiner("\n");
-        for (Map.Entry<String, Long> en : hist.entrySet()) {
+        for (Map.Entry<String, Long> en : new TreeMap<>(hist).entrySet()) {
             joiner.add(en.getKey() + " " + en.getValue());
         }
         return joiner.toString();
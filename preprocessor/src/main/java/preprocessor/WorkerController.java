@@ -0,0 +1,125 @@
+package preprocessor;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Adjusts the number of worker threads of a pool between bounds to maximise extracted methods per second.
+ * Every interval it reads the throughput, the process CPU load and the GC time from the management beans and
+ * hill-climbs: it keeps moving in the same direction while throughput improves, turns around when it drops, grows
+ * while the CPUs are underused, and shrinks when GC takes too large a share of the time.
+ */
+public class WorkerController implements AutoCloseable {
+
+    private static final double GC_LIMIT = 0.25;        // GC 時間の割合がこれを超えたら減らす
+    private static final double CPU_UNDERUSED = 0.75;   // CPU 使用率がこれ未満なら増やす余地がある
+    private static final double SIGNIFICANT = 0.05;     // スループットの変化とみなす割合
+
+    private final ThreadPoolExecutor pool;
+    private final int minWorkers;
+    private final int maxWorkers;
+    private final LongAdder extractedGraphs;
+    private final Logger logger;
+    private final ScheduledExecutorService scheduler;
+    private final OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+
+    private long lastNanos;
+    private long lastGraphs;
+    private long lastGcMillis;
+    private double lastThroughput = -1;
+    private int direction = 1;
+
+    public WorkerController(ThreadPoolExecutor pool, int minWorkers, int maxWorkers, LongAdder extractedGraphs,
+                            Logger logger) {
+        this.pool = pool;
+        this.minWorkers = minWorkers;
+        this.maxWorkers = maxWorkers;
+        this.extractedGraphs = extractedGraphs;
+        this.logger = logger;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "worker-controller");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public void start(long intervalMillis) {
+        lastNanos = System.nanoTime();
+        lastGraphs = extractedGraphs.sum();
+        lastGcMillis = gcMillis();
+        scheduler.scheduleAtFixedRate(this::adjust, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void adjust() {
+        long now = System.nanoTime();
+        long graphs = extractedGraphs.sum();
+        long gc = gcMillis();
+        double seconds = (now - lastNanos) / 1e9;
+        double throughput = (graphs - lastGraphs) / seconds;
+        double gcShare = (gc - lastGcMillis) / 1000.0 / seconds;
+        double cpu = processCpuLoad();
+        lastNanos = now;
+        lastGraphs = graphs;
+        lastGcMillis = gc;
+
+        int current = pool.getMaximumPoolSize();
+        int target = current;
+        if (gcShare > GC_LIMIT) {
+            direction = -1;
+            target = current - 1;
+        } else if (lastThroughput >= 0 && throughput < lastThroughput * (1 - SIGNIFICANT)) {
+            direction = -direction;  // 前回の変更で悪化したので戻す
+            target = current + direction;
+        } else if (lastThroughput >= 0 && throughput > lastThroughput * (1 + SIGNIFICANT)) {
+            target = current + direction;
+        } else if (cpu >= 0 && cpu < CPU_UNDERUSED) {
+            direction = 1;
+            target = current + 1;
+        }
+        target = Math.max(minWorkers, Math.min(maxWorkers, target));
+        lastThroughput = throughput;
+        if (target != current) {
+            resize(target);
+            logger.info(String.format("workers %d -> %d (%.1f methods/s, cpu %.0f%%, gc %.0f%%)",
+                    current, target, throughput, cpu * 100, gcShare * 100));
+        }
+    }
+
+    private void resize(int workers) {
+        // core <= max を保つ順に変更する。減らす場合、実行中のプロジェクトは最後まで処理される
+        if (workers > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(workers);
+            pool.setCorePoolSize(workers);
+        } else {
+            pool.setCorePoolSize(workers);
+            pool.setMaximumPoolSize(workers);
+        }
+    }
+
+    private double processCpuLoad() {
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+        }
+        return -1;
+    }
+
+    private static long gcMillis() {
+        long total = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            total += Math.max(0, gc.getCollectionTime());
+        }
+        return total;
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+}
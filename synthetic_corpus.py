@@ -0,0 +1,158 @@
+"""
+Writes a reproducible synthetic Java corpus laid out like the real datasets, dataset/<type>/<project>/**/*.java,
+for throughput checks that cannot ship real corpora. The same seed always produces the same files.
+
+    python synthetic_corpus.py --output_dir /tmp/synthetic --projects 12 --shape mixed --seed 1
+
+Shapes:
+    tiny   many small files with a few short methods each
+    deep   methods with deeply nested control flow
+    giant  few files with very long methods
+    mixed  every file picks one of the above, mostly tiny
+Project sizes follow a Pareto distribution, so a few projects are much larger than the rest (--skew).
+Loop bodies are analysed twice by the data flow pass, so extraction time grows as 2^--max_depth.
+"""
+import argparse
+import os
+import random
+
+WORDS = ['get', 'set', 'value', 'name', 'index', 'count', 'buffer', 'item', 'list', 'map', 'key', 'node', 'size',
+         'read', 'write', 'update', 'find', 'build', 'parse', 'load', 'store', 'check', 'total', 'result', 'entry',
+         'state', 'config', 'handler', 'request', 'response', 'offset', 'length', 'cache', 'token', 'path']
+DATA_TYPES = [('training', 0.8), ('validation', 0.1), ('test', 0.1)]
+SHAPES = ['tiny', 'deep', 'giant']
+MIXED_WEIGHTS = [0.7, 0.2, 0.1]
+
+
+def identifier(rnd, parts=2, capitalize=False):
+    words = [rnd.choice(WORDS) for _ in range(rnd.randint(1, parts))]
+    name = words[0] + ''.join(w.capitalize() for w in words[1:])
+    return name[0].upper() + name[1:] if capitalize else name
+
+
+class MethodWriter:
+
+    def __init__(self, rnd, fields):
+        self.rnd = rnd
+        self.fields = fields
+        self.lines = []
+        self.locals = ['arg0', 'arg1']
+
+    def statement(self, indent):
+        rnd = self.rnd
+        pad = '    ' * indent
+        kind = rnd.random()
+        if kind < 0.35:
+            var = f'{identifier(rnd)}{len(self.lines)}'
+            self.lines.append(f'{pad}int {var} = {self.expression()};')
+            self.locals.append(var)
+        elif kind < 0.6:
+            self.lines.append(f'{pad}{rnd.choice(self.locals)} = {self.expression()};')
+        elif kind < 0.8:
+            self.lines.append(f'{pad}this.{rnd.choice(self.fields)} += {self.expression()};')
+        else:
+            self.lines.append(f'{pad}{identifier(rnd)}({self.expression()}, {rnd.choice(self.locals)});')
+
+    def expression(self):
+        rnd = self.rnd
+        a = rnd.choice(self.locals + [f'this.{f}' for f in self.fields])
+        b = rnd.choice(self.locals + [str(rnd.randint(0, 100))])
+        return f'{a} {rnd.choice("+-*")} {b}'
+
+    def block(self, indent, statements, depth):
+        """Writes `statements` statements, opening nested blocks of a few statements up to `depth` levels deep."""
+        rnd = self.rnd
+        pad = '    ' * indent
+        for _ in range(statements):
+            if depth > 0 and rnd.random() < 0.5:
+                kind = rnd.random()
+                scope = len(self.locals)
+                if kind < 0.4:
+                    self.lines.append(f'{pad}if ({rnd.choice(self.locals)} > {rnd.randint(0, 10)}) {{')
+                elif kind < 0.7:
+                    var = f'i{indent}'
+                    self.lines.append(f'{pad}for (int {var} = 0; {var} < {rnd.choice(self.locals)}; {var}++) {{')
+                    self.locals.append(var)
+                else:
+                    self.lines.append(f'{pad}while ({rnd.choice(self.locals)} < {rnd.randint(10, 100)}) {{')
+                self.block(indent + 1, rnd.randint(1, 3), depth - 1)
+                self.lines.append(f'{pad}}}')
+                del self.locals[scope:]  # ブロック内の変数はブロックの外から参照しない
+            else:
+                self.statement(indent)
+
+
+def method(rnd, fields, shape, opts):
+    if shape == 'tiny':
+        statements, depth = rnd.randint(1, 4), 1
+    elif shape == 'deep':
+        statements, depth = rnd.randint(2, 3), rnd.randint(opts.max_depth // 2, opts.max_depth)
+    else:
+        statements, depth = rnd.randint(opts.giant_statements // 2, opts.giant_statements), 2
+    writer = MethodWriter(rnd, fields)
+    writer.block(2, statements, depth)
+    head = f'    public int {identifier(rnd, 3)}(int arg0, int arg1) {{'
+    return '\n'.join([head] + writer.lines + ['        return arg0;', '    }'])
+
+
+def java_file(rnd, package, class_name, shape, opts):
+    fields = [f'{identifier(rnd)}{i}' for i in range(rnd.randint(1, 4))]
+    methods = {'tiny': (1, 3), 'deep': (2, 6), 'giant': (1, 2)}[shape]
+    body = [f'    private int {f};' for f in fields]
+    body += [method(rnd, fields, shape, opts) for _ in range(rnd.randint(*methods))]
+    return f'package {package};\n\npublic class {class_name} {{\n\n' + '\n\n'.join(body) + '\n}\n'
+
+
+def write_project(root, rnd, files, opts):
+    packages = [f'com.example.{identifier(rnd).lower()}.{identifier(rnd).lower()}' for _ in range(max(1, files // 20))]
+    for i in range(files):
+        package = rnd.choice(packages)
+        class_name = f'{identifier(rnd, 2, capitalize=True)}{i}'
+        file_shape = rnd.choices(SHAPES, MIXED_WEIGHTS)[0] if opts.shape == 'mixed' else opts.shape
+        directory = os.path.join(root, *package.split('.'))
+        os.makedirs(directory, exist_ok=True)
+        with open(os.path.join(directory, class_name + '.java'), 'w') as f:
+            f.write(java_file(rnd, package, class_name, file_shape, opts))
+
+
+def generate(output_dir, opts):
+    rnd = random.Random(opts.seed)
+    for p in range(opts.projects):
+        data_type = DATA_TYPES[-1][0]
+        u = rnd.random()
+        for name, share in DATA_TYPES:
+            if u < share:
+                data_type = name
+                break
+            u -= share
+        files = max(1, int(opts.files_per_project * (opts.skew - 1) / opts.skew * rnd.paretovariate(opts.skew)))
+        if opts.shape == 'tiny':
+            files *= 10
+        write_project(os.path.join(output_dir, data_type, f'project{p}'), random.Random(rnd.random()), files, opts)
+
+
+def argument_parser():
+    parser = argparse.ArgumentParser()
+    parser.add_argument('--output_dir', required=True)
+    parser.add_argument('--projects', type=int, default=12)
+    parser.add_argument('--files_per_project', type=int, default=30, help='mean number of files of a project')
+    parser.add_argument('--skew', type=float, default=1.5, help='Pareto shape of the project sizes; lower is more skewed')
+    parser.add_argument('--shape', choices=SHAPES + ['mixed'], default='mixed')
+    parser.add_argument('--max_depth', type=int, default=6, help='maximum nesting of the deep methods')
+    parser.add_argument('--giant_statements', type=int, default=40, help='maximum top-level statements of a giant method')
+    parser.add_argument('--seed', type=int, default=1)
+    return parser
+
+
+def main():
+    parser = argument_parser()
+    args = parser.parse_args()
+    if args.skew <= 1:
+        parser.error('--skew must be greater than 1')
+    if os.path.exists(args.output_dir) and os.listdir(args.output_dir):
+        parser.error(f'{args.output_dir} is not empty')
+    generate(args.output_dir, args)
+
+
+if __name__ == '__main__':
+    main()